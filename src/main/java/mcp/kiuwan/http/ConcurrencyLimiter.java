@@ -0,0 +1,160 @@
+// MIT License
+//
+// Copyright (c) 2019 Marcos Cacabelos Prol
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+
+package mcp.kiuwan.http;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// aimd limit of in-flight calls to one host: +1 per limit calls answered in time, x0.5 on 429 / 5xx / connection
+// errors and x0.9 when latency grows beyond 'tolerance' times the lowest observed one. the lowest latency is kept
+// per call type (method and path with the numbers masked): a search is not slow because a ticket get is faster.
+public class ConcurrencyLimiter {
+	// status of a call that gives no feedback (cancelled, or cut by the run deadline): only frees its place.
+	public final static int NO_SIGNAL = -1;
+	
+	private final static int RTT_WINDOW = 500;
+	private final static double BACKOFF = 0.5;
+	private final static double LATENCY_BACKOFF = 0.9;
+	
+	private static Logger logger = LoggerFactory.getLogger(ConcurrencyLimiter.class);
+	
+	private String name;
+	private int minLimit;
+	private int maxLimit;
+	private double tolerance;
+	
+	private double limit;
+	private int inFlight;
+	
+	private Map<String, Rtt> rtts = new HashMap<>();
+	
+	// no decrease until the calls in flight when the last one happened are answered.
+	private long completed;
+	private long recoverAt;
+	
+	private long drops;
+	
+	public ConcurrencyLimiter(String name, int initialLimit, int maxLimit, double tolerance) {
+		this.name = name;
+		this.minLimit = 1;
+		this.maxLimit = Math.max(1, maxLimit);
+		this.tolerance = tolerance;
+		this.limit = Math.min(this.maxLimit, Math.max(minLimit, initialLimit));
+	}
+	
+	
+	public synchronized void acquire() {
+		try {
+			while (inFlight >= (int) limit) {
+				wait();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for " + name, e);
+		}
+		inFlight++;
+	}
+	
+	
+	// status 0: no response (connection error or timeout).
+	public synchronized void release(String method, String url, long nanos, int status) {
+		inFlight--;
+		if (status == NO_SIGNAL) {
+			notifyAll();
+			return;
+		}
+		completed++;
+		
+		boolean overloaded = (status == 0 || status == 429 || status >= 500);
+		boolean slow = false;
+		if (!overloaded) {
+			Rtt rtt = rtts.computeIfAbsent(callType(method, url), k -> new Rtt());
+			if (++rtt.samples > RTT_WINDOW) {
+				// forget old minimums, the server may have got slower for good.
+				rtt.samples = 1;
+				rtt.min = nanos;
+			}
+			rtt.min = Math.min(rtt.min, nanos);
+			// the first call of a type sets its baseline.
+			slow = (rtt.samples > 1 && nanos > tolerance * rtt.min);
+		}
+		
+		double previous = limit;
+		if ((overloaded || slow) && completed >= recoverAt) {
+			limit = Math.max(minLimit, limit * (overloaded ? BACKOFF : LATENCY_BACKOFF));
+			recoverAt = completed + inFlight + 1;
+			drops++;
+		} else if (!overloaded && !slow && inFlight + 1 >= (int) limit) {
+			limit = Math.min(maxLimit, limit + 1.0 / limit);
+		}
+		
+		if ((int) previous != (int) limit) {
+			logger.debug("{} concurrency limit: {} -> {} (status {}, {} ms).", name, (int) previous, (int) limit, status, TimeUnit.NANOSECONDS.toMillis(nanos));
+		}
+		notifyAll();
+	}
+	
+	
+	public synchronized int getLimit() {
+		return (int) limit;
+	}
+	
+	
+	public synchronized int getInFlight() {
+		return inFlight;
+	}
+	
+	
+	// 'GET /rest/api/2/issue/K-12/transitions' -> 'GET /rest/api/{}/issue/K-{}/transitions'.
+	static String callType(String method, String url) {
+		String path;
+		try {
+			path = URI.create(url).getRawPath();
+		} catch (IllegalArgumentException e) {
+			path = url;
+		}
+		
+		return method + " " + (path != null ? path : "").replaceAll("\\d+", "{}");
+	}
+	
+	
+	@Override
+	public synchronized String toString() {
+		Map<String, Long> minRttMs = new TreeMap<>();
+		rtts.forEach((type, rtt) -> minRttMs.put(type, TimeUnit.NANOSECONDS.toMillis(rtt.min)));
+		
+		return name + " concurrency limit: limit=" + (int) limit + ", inFlight=" + inFlight + ", decreases=" + drops + ", minRttMs=" + minRttMs;
+	}
+	
+	
+	private static class Rtt {
+		private long min = Long.MAX_VALUE;
+		private int samples;
+	}
+}
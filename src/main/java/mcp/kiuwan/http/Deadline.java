@@ -0,0 +1,95 @@
+// MIT License
+//
+// Copyright (c) 2019 Marcos Cacabelos Prol
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+
+package mcp.kiuwan.http;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.glassfish.jersey.client.ClientProperties;
+
+// run level time budget: calls not started when it runs out are aborted with a 504, and the connect and read
+// timeouts of the others never go beyond what is left.
+public class Deadline implements ClientRequestFilter {
+	private final static Deadline NONE = new Deadline(Long.MAX_VALUE);
+	
+	private long expiresAt;
+	
+	private Deadline(long expiresAt) {
+		this.expiresAt = expiresAt;
+	}
+	
+	
+	public static Deadline none() {
+		return NONE;
+	}
+	
+	
+	public static Deadline in(long duration, TimeUnit unit) {
+		return (duration > 0 ? new Deadline(System.nanoTime() + unit.toNanos(duration)) : NONE);
+	}
+	
+	
+	public boolean isExpired() {
+		return remainingMillis() <= 0;
+	}
+	
+	
+	public long remainingMillis() {
+		if (this == NONE) {
+			return Long.MAX_VALUE;
+		}
+		
+		return TimeUnit.NANOSECONDS.toMillis(expiresAt - System.nanoTime());
+	}
+	
+	
+	@Override
+	public void filter(ClientRequestContext requestContext) throws IOException {
+		if (this == NONE) {
+			return;
+		}
+		
+		long remaining = remainingMillis();
+		if (remaining <= 0) {
+			requestContext.abortWith(Response.status(Response.Status.GATEWAY_TIMEOUT).type(MediaType.TEXT_PLAIN).entity("Run deadline exceeded.").build());
+			return;
+		}
+		
+		limitTimeout(requestContext, ClientProperties.CONNECT_TIMEOUT, remaining);
+		limitTimeout(requestContext, ClientProperties.READ_TIMEOUT, remaining);
+	}
+	
+	
+	private void limitTimeout(ClientRequestContext requestContext, String property, long remaining) {
+		Object configured = requestContext.getConfiguration().getProperty(property);
+		int timeout = (configured instanceof Number ? ((Number) configured).intValue() : 0);
+		if (timeout == 0 || timeout > remaining) {
+			requestContext.setProperty(property, (int) Math.min(Integer.MAX_VALUE, remaining));
+		}
+	}
+}
@@ -0,0 +1,250 @@
+// MIT License
+//
+// Copyright (c) 2019 Marcos Cacabelos Prol
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+
+package mcp.kiuwan.http;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.ws.rs.core.HttpHeaders;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// conditional cache of GET bodies on disk, keyed by url (with query). validators (ETag / Last-Modified) are sent
+// back as If-None-Match / If-Modified-Since and a 304 answer is served from disk. least recently used entries are
+// evicted above maxSize bytes. used by the transports around their GETs.
+public class HttpCache {
+	private final static String BODY = ".body";
+	private final static String META = ".meta";
+	
+	private static Logger logger = LoggerFactory.getLogger(HttpCache.class);
+
+	private File dir;
+	private long maxSize;
+	private long size;
+	
+	// key -> body size, in access order.
+	private LinkedHashMap<String, Long> index = new LinkedHashMap<>(16, 0.75f, true);
+	
+	private long hits;
+	private long misses;
+	
+	public HttpCache(File dir, long maxSize) {
+		this.dir = dir;
+		this.maxSize = maxSize;
+		
+		dir.mkdirs();
+		load();
+	}
+	
+	
+	// conditional headers of a GET of the url, empty when it is not cached.
+	public Map<String, String> getValidators(String url) {
+		Map<String, String> validators = new LinkedHashMap<>();
+		
+		Properties meta = readMeta(getKey(url));
+		if (meta != null) {
+			if (meta.getProperty("etag") != null) {
+				validators.put(HttpHeaders.IF_NONE_MATCH, meta.getProperty("etag"));
+			}
+			if (meta.getProperty("lastModified") != null) {
+				validators.put(HttpHeaders.IF_MODIFIED_SINCE, meta.getProperty("lastModified"));
+			}
+		}
+		
+		return validators;
+	}
+	
+	
+	// body to serve for a 304 answer, null when it is no longer cached (evicted after the validators were sent): the
+	// GET has to be sent again without them. read under the lock, eviction cannot delete it half way.
+	public synchronized byte[] getRevalidated(String url) {
+		String key = getKey(url);
+		if (!index.containsKey(key)) {
+			return null;
+		}
+		
+		byte[] bytes;
+		try {
+			bytes = Files.readAllBytes(new File(dir, key + BODY).toPath());
+		} catch (IOException e) {
+			logger.warn("Cannot read cached '{}': {}", url, e.getMessage());
+			remove(key);
+			return null;
+		}
+		
+		hit(key);
+		return bytes;
+	}
+	
+	
+	// a 200 answer with at least one validator.
+	public void put(String url, String etag, String lastModified, byte[] bytes) {
+		Properties meta = new Properties();
+		meta.setProperty("url", url);
+		if (etag != null) {
+			meta.setProperty("etag", etag);
+		}
+		if (lastModified != null) {
+			meta.setProperty("lastModified", lastModified);
+		}
+		store(getKey(url), meta, bytes);
+	}
+	
+	
+	public synchronized long getHits() {
+		return hits;
+	}
+	
+	
+	public synchronized long getMisses() {
+		return misses;
+	}
+	
+	
+	@Override
+	public synchronized String toString() {
+		return "http cache: hits=" + hits + ", misses=" + misses + ", entries=" + index.size() + ", size=" + size;
+	}
+	
+	
+	private synchronized void hit(String key) {
+		hits++;
+		index.get(key);
+		new File(dir, key + BODY).setLastModified(System.currentTimeMillis());
+	}
+	
+	
+	private synchronized void store(String key, Properties meta, byte[] bytes) {
+		misses++;
+		if (bytes.length > maxSize) {
+			return;
+		}
+		
+		try {
+			write(new File(dir, key + BODY), out -> out.write(bytes));
+			write(new File(dir, key + META), out -> meta.store(out, null));
+		} catch (IOException e) {
+			logger.warn("Cannot cache '{}': {}", meta.getProperty("url"), e.getMessage());
+			remove(key);
+			return;
+		}
+		
+		Long previous = index.put(key, (long) bytes.length);
+		size += bytes.length - (previous != null ? previous : 0L);
+		evict();
+	}
+	
+	
+	private void evict() {
+		Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+		while (size > maxSize && it.hasNext()) {
+			Map.Entry<String, Long> eldest = it.next();
+			size -= eldest.getValue();
+			it.remove();
+			new File(dir, eldest.getKey() + BODY).delete();
+			new File(dir, eldest.getKey() + META).delete();
+		}
+	}
+	
+	
+	private synchronized void remove(String key) {
+		Long previous = index.remove(key);
+		if (previous != null) {
+			size -= previous;
+		}
+		new File(dir, key + BODY).delete();
+		new File(dir, key + META).delete();
+	}
+	
+	
+	// rebuilds the lru order from the body files modification times.
+	private synchronized void load() {
+		File[] bodies = dir.listFiles((d, name) -> name.endsWith(BODY));
+		if (bodies == null) {
+			return;
+		}
+		
+		Arrays.sort(bodies, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+		for (File body : bodies) {
+			String key = body.getName().substring(0, body.getName().length() - BODY.length());
+			if (new File(dir, key + META).isFile()) {
+				index.put(key, body.length());
+				size += body.length();
+			} else {
+				body.delete();
+			}
+		}
+		evict();
+	}
+	
+	
+	private Properties readMeta(String key) {
+		synchronized (this) {
+			if (!index.containsKey(key)) {
+				return null;
+			}
+		}
+		
+		Properties meta = new Properties();
+		try (InputStream in = new FileInputStream(new File(dir, key + META))) {
+			meta.load(in);
+		} catch (IOException e) {
+			return null;
+		}
+		
+		return meta;
+	}
+	
+	
+	private void write(File file, IOConsumer<OutputStream> writer) throws IOException {
+		File tmp = new File(dir, file.getName() + ".tmp");
+		try (OutputStream out = new FileOutputStream(tmp)) {
+			writer.accept(out);
+		}
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	
+	private String getKey(String url) {
+		return Digests.sha256Hex(url);
+	}
+	
+	
+	@FunctionalInterface
+	private interface IOConsumer<T> {
+		void accept(T t) throws IOException;
+	}
+}
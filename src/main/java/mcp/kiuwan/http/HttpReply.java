@@ -0,0 +1,59 @@
+// MIT License
+//
+// Copyright (c) 2019 Marcos Cacabelos Prol
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+
+package mcp.kiuwan.http;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+// status and whole body of an http call.
+public class HttpReply {
+	private int status;
+	private String reason;
+	private byte[] body;
+	
+	public HttpReply(int status, String reason, byte[] body) {
+		this.status = status;
+		this.reason = (reason != null ? reason : "");
+		this.body = (body != null ? body : new byte[0]);
+	}
+	
+	
+	public int getStatus() {
+		return status;
+	}
+	
+	
+	public String getReason() {
+		return reason;
+	}
+	
+	
+	public String getBodyAsString() {
+		return new String(body, StandardCharsets.UTF_8);
+	}
+	
+	
+	public <T> T read(Class<T> type) throws IOException {
+		return JsonMapper.get().readValue(body, type);
+	}
+}
@@ -0,0 +1,68 @@
+// MIT License
+//
+// Copyright (c) 2019 Marcos Cacabelos Prol
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+
+package mcp.kiuwan.http;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+
+// the http calls of the clients, with json bodies, whatever the http stack: 'jersey' (default) or 'jdk'
+// (java.net.http with http/2, only in the java 11+ build). connection errors and timeouts are IOExceptions,
+// any http status is a reply.
+public interface HttpTransport {
+	
+	HttpReply get(String url) throws IOException;
+	
+	HttpReply put(String url, Object body) throws IOException;
+	
+	HttpReply post(String url, Object body) throws IOException;
+	
+	// milliseconds, 0 is no timeout.
+	void setTimeouts(int connectTimeout, int readTimeout);
+	
+	void setDeadline(Deadline deadline);
+	
+	void setHttpCache(HttpCache httpCache);
+	
+	void setTracer(Tracer tracer, String host);
+	
+	
+	static HttpTransport create(String name, String user, String password) {
+		if (name == null || name.trim().isEmpty() || "jersey".equalsIgnoreCase(name.trim())) {
+			return new JerseyTransport(user, password);
+		}
+		
+		if ("jdk".equalsIgnoreCase(name.trim())) {
+			try {
+				return (HttpTransport) Class.forName(HttpTransport.class.getPackage().getName() + ".JdkHttpTransport")
+					.getConstructor(String.class, String.class).newInstance(user, password);
+			} catch (ClassNotFoundException | NoClassDefFoundError e) {
+				throw new IllegalArgumentException("Http transport 'jdk' needs the java 11+ build.", e);
+			} catch (ReflectiveOperationException e) {
+				Throwable cause = (e instanceof InvocationTargetException ? e.getCause() : e);
+				throw new IllegalArgumentException("Http transport 'jdk' not available: " + cause.getMessage(), cause);
+			}
+		}
+		
+		throw new IllegalArgumentException("Unknown http transport '" + name + "'.");
+	}
+}
@@ -0,0 +1,78 @@
+// MIT License
+//
+// Copyright (c) 2019 Marcos Cacabelos Prol
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+
+package mcp.kiuwan.http;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+
+// base url + path, and query parameters (repeated when they have several values) form encoded.
+public class HttpUrl {
+	private StringBuilder url;
+	private boolean hasQuery;
+	
+	private HttpUrl(String url) {
+		this.url = new StringBuilder(url);
+		this.hasQuery = url.indexOf('?') >= 0;
+	}
+	
+	
+	public static HttpUrl of(String url) {
+		return new HttpUrl(url);
+	}
+	
+	
+	public static HttpUrl of(String baseUrl, String path) {
+		boolean slash = baseUrl.endsWith("/");
+		boolean pathSlash = path.startsWith("/");
+		
+		if (slash && pathSlash) {
+			return new HttpUrl(baseUrl + path.substring(1));
+		}
+		return new HttpUrl(slash || pathSlash ? baseUrl + path : baseUrl + "/" + path);
+	}
+	
+	
+	public HttpUrl query(String name, Object... values) {
+		for (Object value : values) {
+			url.append(hasQuery ? '&' : '?').append(encode(name)).append('=').append(encode(String.valueOf(value)));
+			hasQuery = true;
+		}
+		
+		return this;
+	}
+	
+	
+	@Override
+	public String toString() {
+		return url.toString();
+	}
+	
+	
+	private String encode(String value) {
+		try {
+			return URLEncoder.encode(value, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,156 @@
+// MIT License
+//
+// Copyright (c) 2019 Marcos Cacabelos Prol
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+
+package mcp.kiuwan.http;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collections;
+import java.util.Map;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.authentication.HttpAuthenticationFeature;
+
+// jersey client (http/1.1); the deadline is one of its request filters.
+public class JerseyTransport implements HttpTransport {
+	private final static String CORRELATION_HEADER = "X-Correlation-Id";
+	
+	private Client client;
+	private HttpCache httpCache;
+	private Tracer tracer = Tracer.disabled();
+	private String host;
+	
+	public JerseyTransport(String user, String password) {
+		ClientConfig clientConfig = new ClientConfig();
+		clientConfig.register(HttpAuthenticationFeature.basicBuilder().credentials(user, password).build());
+		
+		client = ClientBuilder.newClient(clientConfig);
+	}
+	
+	
+	@Override
+	public HttpReply get(String url) throws IOException {
+		return send("GET", url, null);
+	}
+	
+	
+	@Override
+	public HttpReply put(String url, Object body) throws IOException {
+		return send("PUT", url, Entity.entity(JsonMapper.get().writeValueAsBytes(body), MediaType.APPLICATION_JSON_TYPE));
+	}
+	
+	
+	@Override
+	public HttpReply post(String url, Object body) throws IOException {
+		return send("POST", url, Entity.entity(JsonMapper.get().writeValueAsBytes(body), MediaType.APPLICATION_JSON_TYPE));
+	}
+	
+	
+	@Override
+	public void setTimeouts(int connectTimeout, int readTimeout) {
+		client.property(ClientProperties.CONNECT_TIMEOUT, connectTimeout);
+		client.property(ClientProperties.READ_TIMEOUT, readTimeout);
+	}
+	
+	
+	@Override
+	public void setDeadline(Deadline deadline) {
+		client.register(deadline);
+	}
+	
+	
+	@Override
+	public void setHttpCache(HttpCache httpCache) {
+		this.httpCache = httpCache;
+	}
+	
+	
+	@Override
+	public void setTracer(Tracer tracer, String host) {
+		this.tracer = tracer;
+		this.host = host;
+	}
+	
+	
+	private HttpReply send(String method, String url, Entity<byte[]> entity) throws IOException {
+		boolean cacheable = (httpCache != null && "GET".equals(method));
+		HttpReply reply = exchange(method, url, entity, cacheable ? httpCache.getValidators(url) : Collections.emptyMap());
+		if (reply == null) {
+			// 304 of an entry evicted after its validators were sent: asked again without them.
+			reply = exchange(method, url, entity, Collections.emptyMap());
+		}
+		
+		return reply;
+	}
+	
+	
+	// null for a 304 to validators of a body no longer cached.
+	// the span is closed here, not in a response filter: calls failing with a timeout or a connection error are traced.
+	private HttpReply exchange(String method, String url, Entity<byte[]> entity, Map<String, String> validators) throws IOException {
+		Tracer.Span span = tracer.detachedSpan(host + " " + method + " " + URI.create(url).getPath(), host).arg("url", url);
+		Invocation.Builder builder = client.target(url).request(MediaType.APPLICATION_JSON);
+		validators.forEach(builder::header);
+		if (tracer.isEnabled()) {
+			builder.header(CORRELATION_HEADER, Long.toString(span.getId()));
+		}
+		
+		Response response;
+		try {
+			response = (entity != null ? builder.method(method, entity) : builder.method(method));
+			span.arg("status", response.getStatus());
+		} catch (ProcessingException e) {
+			span.arg("error", e.getMessage());
+			throw (e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getMessage(), e));
+		} finally {
+			span.close();
+		}
+		
+		try {
+			if (!validators.isEmpty() && response.getStatus() == 304) {
+				byte[] cached = httpCache.getRevalidated(url);
+				return (cached != null ? new HttpReply(200, "OK", cached) : null);
+			}
+			
+			byte[] body = (response.hasEntity() ? response.readEntity(byte[].class) : null);
+			String etag = response.getHeaderString(HttpHeaders.ETAG);
+			String lastModified = response.getHeaderString(HttpHeaders.LAST_MODIFIED);
+			if (httpCache != null && "GET".equals(method) && response.getStatus() == 200 && body != null && (etag != null || lastModified != null)) {
+				httpCache.put(url, etag, lastModified, body);
+			}
+			return new HttpReply(response.getStatus(), response.getStatusInfo().getReasonPhrase(), body);
+		} catch (ProcessingException e) {
+			throw new IOException(e.getMessage(), e);
+		} finally {
+			response.close();
+		}
+	}
+}
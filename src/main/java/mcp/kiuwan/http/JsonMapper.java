@@ -0,0 +1,86 @@
+// MIT License
+//
+// Copyright (c) 2019 Marcos Cacabelos Prol
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+
+package mcp.kiuwan.http;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
+
+// the single ObjectMapper of the application: entity (de)serialization of both clients, beans toString() and json builders.
+public final class JsonMapper {
+	private final static ObjectMapper objectMapper = createObjectMapper();
+	private final static ObjectWriter writer = objectMapper.writer();
+	
+	private JsonMapper() {
+	}
+	
+	
+	public static ObjectMapper get() {
+		return objectMapper;
+	}
+	
+	
+	public static ObjectNode objectNode() {
+		return objectMapper.createObjectNode();
+	}
+	
+	
+	public static ArrayNode arrayNode() {
+		return objectMapper.createArrayNode();
+	}
+	
+	
+	public static String writeValueAsString(Object object) {
+		String valueAsString;
+		try {
+			valueAsString = writer.writeValueAsString(object);
+		} catch (JsonProcessingException e) {
+			valueAsString = e.getMessage();
+		}
+		
+		return valueAsString;
+	}
+	
+	
+	private static ObjectMapper createObjectMapper() {
+		// responses carry many more names than the few we map: do not intern them.
+		JsonFactory jsonFactory = new JsonFactory();
+		jsonFactory.disable(JsonFactory.Feature.INTERN_FIELD_NAMES);
+		
+		ObjectMapper mapper = new ObjectMapper(jsonFactory);
+		mapper.registerModule(new AfterburnerModule());
+		mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+		mapper.disable(SerializationFeature.FAIL_ON_EMPTY_BEANS);
+		mapper.disable(MapperFeature.AUTO_DETECT_CREATORS);
+		mapper.disable(MapperFeature.USE_GETTERS_AS_SETTERS);
+		
+		return mapper;
+	}
+}
@@ -0,0 +1,185 @@
+// MIT License
+//
+// Copyright (c) 2019 Marcos Cacabelos Prol
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+
+package mcp.kiuwan.http;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// sends a duplicate of an idempotent call when the first one is slower than the observed percentile latency.
+// the first answer wins; hedges are limited to a fraction (budget) of all calls.
+public class RequestHedger {
+	private final static int WINDOW_SIZE = 256;
+	private final static int MIN_SAMPLES = 20;
+	
+	private String name;
+	private double percentile;
+	private double budget;
+	
+	private final long[] latencies = new long[WINDOW_SIZE];
+	private int samples;
+	private int next;
+	
+	private AtomicLong requests = new AtomicLong();
+	private AtomicLong hedgesSent = new AtomicLong();
+	private AtomicLong hedgesWon = new AtomicLong();
+	
+	private ExecutorService executor;
+	
+	public RequestHedger(String name, double percentile, double budget) {
+		this.name = name;
+		this.percentile = percentile;
+		this.budget = budget;
+		
+		AtomicInteger count = new AtomicInteger();
+		executor = Executors.newCachedThreadPool(r -> {
+			Thread thread = new Thread(r, name + "-hedge-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+	
+	
+	public <T, E extends Exception> T call(HttpCall<T, E> call) throws E {
+		requests.incrementAndGet();
+		
+		CompletionService<T> completionService = new ExecutorCompletionService<>(executor);
+		long start = System.nanoTime();
+		Future<T> primary = completionService.submit(asCallable(call));
+		Future<T> hedge = null;
+		
+		try {
+			Future<T> first = null;
+			long delay = getHedgeDelayNanos();
+			if (delay > 0) {
+				first = completionService.poll(delay, TimeUnit.NANOSECONDS);
+				if (first == null && hedgesSent.get() < budget * requests.get()) {
+					hedgesSent.incrementAndGet();
+					hedge = completionService.submit(asCallable(call));
+				}
+			}
+			if (first == null) {
+				first = completionService.take();
+			}
+			
+			Future<T> other = (first == primary ? hedge : primary);
+			T result;
+			try {
+				result = first.get();
+			} catch (ExecutionException e) {
+				// the first one failed, the other (if any) still may answer.
+				if (hedge == null) {
+					throw e;
+				}
+				first = completionService.take();
+				other = null;
+				result = first.get();
+			}
+			
+			if (first == hedge) {
+				hedgesWon.incrementAndGet();
+			}
+			if (other != null) {
+				other.cancel(true);
+			}
+			record(System.nanoTime() - start);
+			
+			return result;
+		} catch (ExecutionException e) {
+			throw this.<E>rethrow(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			primary.cancel(true);
+			if (hedge != null) {
+				hedge.cancel(true);
+			}
+			throw new IllegalStateException("Interrupted while waiting for " + name, e);
+		}
+	}
+	
+	
+	public long getRequests() {
+		return requests.get();
+	}
+	
+	
+	public long getHedgesSent() {
+		return hedgesSent.get();
+	}
+	
+	
+	public long getHedgesWon() {
+		return hedgesWon.get();
+	}
+	
+	
+	@Override
+	public String toString() {
+		return name + " hedging: requests=" + getRequests() + ", hedgesSent=" + getHedgesSent() + ", hedgesWon=" + getHedgesWon() + ", delayMs=" + TimeUnit.NANOSECONDS.toMillis(getHedgeDelayNanos());
+	}
+	
+	
+	private <T, E extends Exception> Callable<T> asCallable(HttpCall<T, E> call) {
+		return () -> call.call();
+	}
+	
+	
+	private synchronized void record(long nanos) {
+		latencies[next] = nanos;
+		next = (next + 1) % WINDOW_SIZE;
+		samples = Math.min(samples + 1, WINDOW_SIZE);
+	}
+	
+	
+	// 0 until there are enough samples to know what a slow call is.
+	private synchronized long getHedgeDelayNanos() {
+		if (samples < MIN_SAMPLES) {
+			return 0;
+		}
+		
+		long[] sorted = Arrays.copyOf(latencies, samples);
+		Arrays.sort(sorted);
+		int index = (int) Math.min(samples - 1, Math.ceil(percentile / 100.0 * samples) - 1);
+		return sorted[Math.max(0, index)];
+	}
+	
+	
+	@SuppressWarnings("unchecked")
+	private <E extends Exception> E rethrow(Throwable cause) throws E {
+		if (cause instanceof RuntimeException) {
+			throw (RuntimeException) cause;
+		}
+		if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		throw (E) cause;
+	}
+}
@@ -0,0 +1,163 @@
+// MIT License
+//
+// Copyright (c) 2019 Marcos Cacabelos Prol
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+
+
+package mcp.kiuwan.http;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+// what the rest clients share around their transport: timeouts, deadline, cache and tracing settings, hedged GETs,
+// the adaptive limit of calls in flight, the latency of the calls and the json decoding. a client only builds its
+// urls and maps failures to its own exception.
+public abstract class RestClient<E extends Exception> {
+	private HttpTransport transport;
+	private String host;
+	
+	private RequestHedger hedger;
+	private ConcurrencyLimiter limiter;
+	private Deadline deadline = Deadline.none();
+	private Tracer tracer = Tracer.disabled();
+	private AtomicBoolean connected = new AtomicBoolean();
+	private LongAdder calls = new LongAdder();
+	private LongAdder callNanos = new LongAdder();
+	
+	// host: name of the spans of the calls.
+	protected RestClient(HttpTransport transport, String host) {
+		this.transport = transport;
+		this.host = host;
+	}
+	
+	
+	// failed call answered by the server.
+	protected abstract E newException(HttpReply reply);
+	
+	
+	// connection error, timeout or undecodable answer.
+	protected abstract E newException(IOException cause);
+	
+	
+	// milliseconds, 0 is no timeout.
+	public void setTimeouts(int connectTimeout, int readTimeout) {
+		transport.setTimeouts(connectTimeout, readTimeout);
+	}
+	
+	
+	public void setDeadline(Deadline deadline) {
+		this.deadline = deadline;
+		transport.setDeadline(deadline);
+	}
+	
+	
+	// opt-in: GET bodies are revalidated against the disk cache when set.
+	public void setHttpCache(HttpCache httpCache) {
+		if (httpCache != null) {
+			transport.setHttpCache(httpCache);
+		}
+	}
+	
+	
+	public void setTracer(Tracer tracer) {
+		if (tracer.isEnabled()) {
+			this.tracer = tracer;
+			transport.setTracer(tracer, host);
+		}
+	}
+	
+	
+	// opt-in: calls wait for a permit of the adaptive limit of calls in flight when set.
+	public void setLimiter(ConcurrencyLimiter limiter) {
+		this.limiter = limiter;
+	}
+	
+	
+	// opt-in: idempotent GETs are hedged when set.
+	public void setHedger(RequestHedger hedger) {
+		this.hedger = hedger;
+	}
+	
+	
+	// milliseconds of the calls made so far but the first one (connection set-up), 0 when none.
+	public double getMeanLatency() {
+		long n = calls.sum();
+		return (n > 0 ? callNanos.sum() / 1e6 / n : 0);
+	}
+	
+	
+	// the decoded body of a 200.
+	protected <T> T get(HttpUrl url, Class<T> type) throws E {
+		if (hedger != null) {
+			return hedger.call(() -> doGet(url, type));
+		}
+		
+		return doGet(url, type);
+	}
+	
+	
+	// PUT or POST of a json body; the caller checks the status.
+	protected HttpReply send(String method, String url, Object body) throws E {
+		return invoke(method, url, () -> ("POST".equals(method) ? transport.post(url, body) : transport.put(url, body)));
+	}
+	
+	
+	private <T> T doGet(HttpUrl url, Class<T> type) throws E {
+		HttpReply reply = invoke("GET", url.toString(), () -> transport.get(url.toString()));
+		if (reply.getStatus() != 200) {
+			throw newException(reply);
+		}
+		
+		try (Tracer.Span span = tracer.span("decode " + type.getSimpleName(), "json")) {
+			return reply.read(type);
+		} catch (IOException e) {
+			throw newException(e);
+		}
+	}
+	
+	
+	// connection errors and timeouts are reported as any other failed call.
+	private HttpReply invoke(String method, String url, HttpCall<HttpReply, IOException> call) throws E {
+		if (limiter != null) {
+			limiter.acquire();
+		}
+		long start = System.nanoTime();
+		int status = 0;
+		try {
+			HttpReply reply = call.call();
+			status = reply.getStatus();
+			return reply;
+		} catch (IOException e) {
+			throw newException(e);
+		} finally {
+			long nanos = System.nanoTime() - start;
+			if (!connected.compareAndSet(false, true)) {
+				calls.increment();
+				callNanos.add(nanos);
+			}
+			if (limiter != null) {
+				// lost hedges (cancelled) and calls cut by the run deadline say nothing about the server.
+				boolean noSignal = (Thread.currentThread().isInterrupted() || deadline.isExpired());
+				limiter.release(method, url, nanos, noSignal ? ConcurrencyLimiter.NO_SIGNAL : status);
+			}
+		}
+	}
+}
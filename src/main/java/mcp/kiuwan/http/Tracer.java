@@ -0,0 +1,157 @@
+// MIT License
+//
+// Copyright (c) 2019 Marcos Cacabelos Prol
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+
+package mcp.kiuwan.http;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+// collects spans as chrome trace events ("ph":"X") and writes them to a json file loadable in about:tracing or perfetto.
+public class Tracer {
+	private final static Tracer DISABLED = new Tracer(null);
+	
+	private File file;
+	private long origin = System.nanoTime();
+	private AtomicLong ids = new AtomicLong();
+	private Queue<ObjectNode> events = new ConcurrentLinkedQueue<>();
+	private ThreadLocal<Span> current = new ThreadLocal<>();
+	
+	public Tracer(File file) {
+		this.file = file;
+	}
+	
+	
+	public static Tracer disabled() {
+		return DISABLED;
+	}
+	
+	
+	public boolean isEnabled() {
+		return file != null;
+	}
+	
+	
+	// a span enclosing the spans later opened by the same thread.
+	public Span span(String name, String category) {
+		return new Span(name, category, true);
+	}
+	
+	
+	// a span that may be never closed (e.g. a failed http call), so it does not enclose others.
+	public Span detachedSpan(String name, String category) {
+		return new Span(name, category, false);
+	}
+	
+	
+	public void write() throws IOException {
+		if (!isEnabled()) {
+			return;
+		}
+		
+		ArrayNode traceEvents = JsonMapper.arrayNode();
+		events.forEach(traceEvents::add);
+		
+		ObjectNode trace = JsonMapper.objectNode();
+		trace.set("traceEvents", traceEvents);
+		trace.put("displayTimeUnit", "ms");
+		
+		JsonMapper.get().writeValue(file, trace);
+	}
+	
+	
+	private long now() {
+		return (System.nanoTime() - origin) / 1000L;
+	}
+	
+	
+	public class Span implements AutoCloseable {
+		private String name;
+		private String category;
+		private long id;
+		private long start;
+		private Span parent;
+		private ObjectNode args;
+		private boolean closed;
+		
+		private Span(String name, String category, boolean scoped) {
+			this.name = name;
+			this.category = category;
+			if (isEnabled()) {
+				this.id = ids.incrementAndGet();
+				this.start = now();
+				this.parent = current.get();
+				this.args = JsonMapper.objectNode();
+				if (scoped) {
+					current.set(this);
+				}
+			}
+		}
+		
+		
+		public long getId() {
+			return id;
+		}
+		
+		
+		public Span arg(String key, Object value) {
+			if (args != null) {
+				args.put(key, (value != null ? value.toString() : null));
+			}
+			return this;
+		}
+		
+		
+		@Override
+		public void close() {
+			if (!isEnabled() || closed) {
+				return;
+			}
+			closed = true;
+			
+			if (current.get() == this) {
+				current.set(parent);
+			}
+			
+			args.put("id", id);
+			if (parent != null) {
+				args.put("parent", parent.id);
+			}
+			
+			ObjectNode event = JsonMapper.objectNode();
+			event.put("name", name);
+			event.put("cat", category);
+			event.put("ph", "X");
+			event.put("ts", start);
+			event.put("dur", now() - start);
+			event.put("pid", 1);
+			event.put("tid", Thread.currentThread().getId());
+			event.set("args", args);
+			events.add(event);
+		}
+	}
+}
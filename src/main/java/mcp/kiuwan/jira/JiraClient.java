@@ -22,66 +22,87 @@
 
 package mcp.kiuwan.jira;
 
+import java.io.IOException;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
-import javax.ws.rs.client.Client;
-import javax.ws.rs.client.ClientBuilder;
-import javax.ws.rs.client.Entity;
-import javax.ws.rs.client.Invocation;
-import javax.ws.rs.client.WebTarget;
-import javax.ws.rs.core.MediaType;
-import javax.ws.rs.core.Response;
-
-import org.glassfish.jersey.client.ClientConfig;
-import org.glassfish.jersey.client.authentication.HttpAuthenticationFeature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import mcp.kiuwan.http.JsonMapper;
+import mcp.kiuwan.http.HttpReply;
+import mcp.kiuwan.http.HttpTransport;
+import mcp.kiuwan.http.HttpUrl;
+import mcp.kiuwan.http.RestClient;
 import mcp.kiuwan.jira.beans.Fields;
 import mcp.kiuwan.jira.beans.Issue;
+import mcp.kiuwan.jira.beans.IssuePage;
+import mcp.kiuwan.jira.beans.Transition;
+import mcp.kiuwan.jira.beans.TransitionPage;
 
-public class JiraClient {
+public class JiraClient extends RestClient<JiraException> {
 	private final String ISSUE_PATH = "/rest/api/2/issue/";
+	private final String SEARCH_PATH = "/rest/api/2/search";
+	private final static Object[] ISSUE_FIELDS = { "status", "resolution", "summary", "customfield_10321" };
 	
 	private static Logger logger = LoggerFactory.getLogger(JiraClient.class);
 	
-	private HttpAuthenticationFeature feature;
-
-	private ClientConfig clientConfig;
-	private Client client;
-
 	private String uri;
+	
+	// available transitions by (project, status): same workflow step, same transitions.
+	private Map<String, List<Transition>> transitionsCache = new ConcurrentHashMap<>();
 
 	public JiraClient(String uri, String user, String password) {
+		this(uri, HttpTransport.create(null, user, password));
+	}
+	
+	
+	public JiraClient(String uri, HttpTransport transport) {
+		super(transport, "jira");
 		this.uri = uri;
-		feature = HttpAuthenticationFeature.basicBuilder().credentials(user, password).build();
-
-		clientConfig = new ClientConfig();
-		clientConfig.register(feature);
-		
-		client = ClientBuilder.newClient(clientConfig);
 	}
 
 	
 	public Issue getIssue(String key) throws JiraException {
-		WebTarget webTarget = client.target(uri)
-			.path(ISSUE_PATH + key)
-			.queryParam("fields", "status", "resolution", "summary", "customfield_10321");
+		HttpUrl url = HttpUrl.of(uri, ISSUE_PATH + key)
+			.query("fields", ISSUE_FIELDS);
 		
-		Invocation.Builder invocationBuilder = webTarget.request(MediaType.APPLICATION_JSON);
-
-		Response response = invocationBuilder.get();
-		if (response.getStatus() != 200) {
-			String errorMsg = response.readEntity(String.class);
-			throw new JiraException(response, errorMsg);
+		return get(url, Issue.class);
+	}
+	
+	
+	// all the issues of the query by key, in query order, with the same fields as getIssue.
+	public Map<String, Issue> searchIssues(String jql, int pageSize) throws JiraException {
+		Map<String, Issue> issues = new LinkedHashMap<>();
+		
+		int startAt = 0;
+		while (true) {
+			HttpUrl url = HttpUrl.of(uri, SEARCH_PATH)
+				.query("jql", jql)
+				.query("startAt", startAt)
+				.query("maxResults", pageSize)
+				.query("fields", ISSUE_FIELDS);
+			
+			IssuePage issuePage = get(url, IssuePage.class);
+			if (issuePage.getIssues() == null || issuePage.getIssues().isEmpty()) {
+				break;
+			}
+			issuePage.getIssues().forEach(issue -> issues.put(issue.getKey(), issue));
+			
+			startAt += issuePage.getIssues().size();
+			if (issuePage.getTotal() == null || startAt >= issuePage.getTotal()) {
+				break;
+			}
 		}
-
-		return response.readEntity(Issue.class);
+		
+		return issues;
 	}
 
 	
@@ -103,57 +124,79 @@ public class JiraClient {
 
 	
 	public void releaseIssue(Issue issue, String msg) throws JiraException {
-		String releaseNotes = issue.getFields().getCustomfield_10321();
-		String customfield_10321 = msg + "\n" + ((releaseNotes!=null) ? releaseNotes : "");
-		
 		Fields fields = new Fields();
-		fields.setCustomfield_10321(customfield_10321);
+		fields.setCustomfield_10321(getReleaseNotes(issue, msg));
 
 		Issue updateIssue = new Issue();
 		updateIssue.setFields(fields);
 
-		WebTarget target = client.target(uri).path(ISSUE_PATH + issue.getKey());
-			
-		Invocation.Builder builder = target.request(MediaType.APPLICATION_JSON);
-
-		Response response = builder.put(Entity.json(updateIssue));
-		if (response.getStatus() != 200 && response.getStatus() != 204) {
-			String errorMsg = response.readEntity(String.class);
-			throw new JiraException(response, errorMsg);
-		}
-		response.close();
+		put(ISSUE_PATH + issue.getKey(), updateIssue);
 	}
 
 	
 	public void addIssueComment(Issue issue, String commentMsg) throws JiraException {
-		final JsonNodeFactory factory = JsonNodeFactory.instance;
+		ObjectNode data =  JsonMapper.objectNode();
+		data.set("update", createCommentUpdate(commentMsg));
 
-		ObjectNode add =  factory.objectNode();
-		add.put("body", commentMsg);
-		
-		ObjectNode comment =  factory.objectNode();
-		comment.set("add", add);
-		
-		ArrayNode arrayOfComments = factory.arrayNode();
-		arrayOfComments.add(comment);
-
-		ObjectNode update =  factory.objectNode();
-		update.set("comment", arrayOfComments);
+		updateIssue(issue, data);
+	}
+	
 	
-		ObjectNode data =  factory.objectNode();
-		data.set("update", update);
+	// addIssueComment and releaseIssue in a single edit.
+	public void releaseIssueWithComment(Issue issue, String msg) throws JiraException {
+		ObjectNode fields =  JsonMapper.objectNode();
+		fields.put("customfield_10321", getReleaseNotes(issue, msg));
+		
+		ObjectNode data =  JsonMapper.objectNode();
+		data.set("fields", fields);
+		data.set("update", createCommentUpdate(msg));
 
 		updateIssue(issue, data);
 	}
 	
 
-	public void transitionIssue(Issue issue, Long status) throws JiraException {
-		final JsonNodeFactory factory = JsonNodeFactory.instance;
+	public List<Transition> getTransitions(Issue issue) throws JiraException {
+		String cacheKey = getTransitionsCacheKey(issue);
+		List<Transition> transitions = (cacheKey != null ? transitionsCache.get(cacheKey) : null);
+		if (transitions != null) {
+			return transitions;
+		}
+		
+		HttpUrl url = HttpUrl.of(uri, ISSUE_PATH + issue.getKey() + "/transitions");
+		
+		TransitionPage transitionPage = get(url, TransitionPage.class);
+		transitions = (transitionPage.getTransitions() != null ? transitionPage.getTransitions() : Collections.emptyList());
+		if (cacheKey != null) {
+			transitionsCache.put(cacheKey, transitions);
+		}
+		
+		return transitions;
+	}
+	
+	
+	public Transition findTransition(Issue issue, String transitionName) throws JiraException {
+		return getTransitions(issue).stream().filter(t -> t.matches(transitionName)).findFirst().orElse(null);
+	}
+	
+	
+	// returns false (and sends nothing) when the issue workflow has no such transition.
+	public boolean transitionIssue(Issue issue, String transitionName) throws JiraException {
+		Transition transition = findTransition(issue, transitionName);
+		if (transition == null) {
+			logger.debug("Jira.transition: '{}' not available for '{}', skipped.", transitionName, issue.getKey());
+			return false;
+		}
+		
+		transitionIssue(issue, transition.getId());
+		return true;
+	}
+	
 
-		ObjectNode transition =  factory.objectNode();
-		transition.put("id", status.toString());
+	public void transitionIssue(Issue issue, Long transitionId) throws JiraException {
+		ObjectNode transition =  JsonMapper.objectNode();
+		transition.put("id", transitionId.toString());
 		
-		ObjectNode data =  factory.objectNode();
+		ObjectNode data =  JsonMapper.objectNode();
 		data.set("transition", transition);
 
 		String path = ISSUE_PATH + issue.getKey() + "/transitions";
@@ -161,36 +204,77 @@ public class JiraClient {
 	}
 	
 	
+	// (project, status) of the issue: issues in the same workflow step have the same transitions.
+	public static String getWorkflowStep(Issue issue) {
+		if (issue.getKey() == null || issue.getFields() == null || issue.getFields().getStatus() == null) {
+			return null;
+		}
+		
+		String project = issue.getKey().substring(0, Math.max(0, issue.getKey().lastIndexOf('-')));
+		return project + "/" + issue.getFields().getStatus().getId();
+	}
+	
+	
+	private String getTransitionsCacheKey(Issue issue) {
+		return getWorkflowStep(issue);
+	}
+	
+	
+	private String getReleaseNotes(Issue issue, String msg) {
+		String releaseNotes = issue.getFields().getCustomfield_10321();
+		return msg + "\n" + ((releaseNotes!=null) ? releaseNotes : "");
+	}
+	
+	
+	private ObjectNode createCommentUpdate(String commentMsg) {
+		ObjectNode add =  JsonMapper.objectNode();
+		add.put("body", commentMsg);
+		
+		ObjectNode comment =  JsonMapper.objectNode();
+		comment.set("add", add);
+		
+		ArrayNode arrayOfComments = JsonMapper.arrayNode();
+		arrayOfComments.add(comment);
+
+		ObjectNode update =  JsonMapper.objectNode();
+		update.set("comment", arrayOfComments);
+		
+		return update;
+	}
+	
+	
 	private void updateIssue(Issue issue, ObjectNode data) throws JiraException {
 		String path = ISSUE_PATH + issue.getKey();
 		put(path, data);
 	}
 	
 	
-	private void post(String path, ObjectNode data) throws JiraException {
-		WebTarget target = client.target(uri).path(path);
-		
-		Invocation.Builder builder = target.request(MediaType.APPLICATION_JSON);
-
-		Response response = builder.post(Entity.json(data));
-		if (response.getStatus() != 200 && response.getStatus() != 204) {
-			String errorMsg = response.readEntity(String.class);
-			throw new JiraException(response, errorMsg);
+	private void post(String path, Object data) throws JiraException {
+		String url = HttpUrl.of(uri, path).toString();
+		HttpReply reply = send("POST", url, data);
+		if (reply.getStatus() != 200 && reply.getStatus() != 204) {
+			throw new JiraException(reply);
 		}
-		response.close();
 	}
 	
 	
-	private void put(String path, ObjectNode data) throws JiraException {
-		WebTarget target = client.target(uri).path(path);
-		
-		Invocation.Builder builder = target.request(MediaType.APPLICATION_JSON);
-
-		Response response = builder.put(Entity.json(data));
-		if (response.getStatus() != 200 && response.getStatus() != 204) {
-			String errorMsg = response.readEntity(String.class);
-			throw new JiraException(response, errorMsg);
+	private void put(String path, Object data) throws JiraException {
+		String url = HttpUrl.of(uri, path).toString();
+		HttpReply reply = send("PUT", url, data);
+		if (reply.getStatus() != 200 && reply.getStatus() != 204) {
+			throw new JiraException(reply);
 		}
-		response.close();
+	}
+	
+	
+	@Override
+	protected JiraException newException(HttpReply reply) {
+		return new JiraException(reply);
+	}
+	
+	
+	@Override
+	protected JiraException newException(IOException cause) {
+		return new JiraException(cause);
 	}
 }
@@ -22,12 +22,16 @@
 
 package mcp.kiuwan.jira;
 
-import javax.ws.rs.core.Response;
+import mcp.kiuwan.http.HttpReply;
 
 public class JiraException extends Exception {
 	private static final long serialVersionUID = -7613914949965986982L;
 	
-	public JiraException(Response response, String errorMsg) {
-		super("HTTP error: " + response.getStatus() + ". " + response.getStatusInfo().getReasonPhrase() + ". " + errorMsg);
+	public JiraException(HttpReply reply) {
+		super("HTTP error: " + reply.getStatus() + ". " + reply.getReason() + ". " + reply.getBodyAsString());
+	}
+	
+	public JiraException(Throwable cause) {
+		super("HTTP error: " + cause.getMessage(), cause);
 	}
 }
@@ -23,13 +23,11 @@
 package mcp.kiuwan.jira.beans;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
 import lombok.Getter;
 import lombok.Setter;
+import mcp.kiuwan.http.JsonMapper;
 import mcp.kiuwan.zendesk.beans.Field;
 
 @Getter
@@ -48,9 +46,7 @@ public class Issue {
 
 	
 	public String toShortString() {
-		final JsonNodeFactory factory = JsonNodeFactory.instance;
-
-		ObjectNode node =  factory.objectNode();
+		ObjectNode node =  JsonMapper.objectNode();
 		node.put("key", getKey());
 		node.put("status", fields.getStatus().getName());
 		node.put("resolution", (fields.getResolution()!=null ? fields.getResolution().getName() : ""));
@@ -61,15 +57,7 @@ public class Issue {
 	
 	
 	private String objectAsString(Object object) {
-		ObjectMapper objectMapper = new ObjectMapper();
-		String valueAsString;
-		try {
-			valueAsString = objectMapper.writeValueAsString(object);
-		} catch (JsonProcessingException e) {
-			valueAsString = e.getMessage();
-		}
-		
-		return valueAsString;
+		return JsonMapper.writeValueAsString(object);
 	}
 	
 }
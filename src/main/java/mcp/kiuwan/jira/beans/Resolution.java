@@ -22,17 +22,52 @@
 
 package mcp.kiuwan.jira.beans;
 
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
 
 import lombok.AccessLevel;
 import lombok.Getter;
-import lombok.Setter;
 
+// immutable, one shared instance per id: decoded issues point to it instead of holding their own copy.
 @Getter
-@Setter
 @JsonIgnoreProperties(ignoreUnknown = true)
-public class Resolution {
-	@Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE) static public final Long FIXED = 1L;	
-	private Long id;
-	private String name;
+public final class Resolution {
+	@Getter(AccessLevel.NONE) static public final long FIXED = 1L;
+	
+	@Getter(AccessLevel.NONE) private static final ConcurrentMap<Long, Resolution> instances = new ConcurrentHashMap<>();
+	
+	private final Long id;
+	private final String name;
+	
+	private Resolution(Long id, String name) {
+		this.id = id;
+		this.name = name;
+	}
+	
+	
+	// a renamed resolution replaces the shared instance, the ones already decoded keep the old name.
+	@JsonCreator
+	public static Resolution of(@JsonProperty("id") Long id, @JsonProperty("name") String name) {
+		if (id == null) {
+			return new Resolution(null, name);
+		}
+		
+		Resolution resolution = instances.get(id);
+		if (resolution == null || !Objects.equals(resolution.name, name)) {
+			resolution = new Resolution(id, name);
+			instances.put(id, resolution);
+		}
+		
+		return resolution;
+	}
+	
+	
+	public boolean is(long resolutionId) {
+		return id != null && id == resolutionId;
+	}
 }
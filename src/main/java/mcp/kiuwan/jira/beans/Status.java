@@ -22,19 +22,53 @@
 
 package mcp.kiuwan.jira.beans;
 
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
 
 import lombok.AccessLevel;
 import lombok.Getter;
-import lombok.Setter;
 
+// immutable, one shared instance per id: decoded issues point to it instead of holding their own copy.
 @Getter
-@Setter
 @JsonIgnoreProperties(ignoreUnknown = true)
-public class Status {
-	@Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE) static public final Long RESOLVED = 5L;
-	@Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE) static public final Long CLOSED = 6L;
+public final class Status {
+	@Getter(AccessLevel.NONE) static public final long RESOLVED = 5L;
+	@Getter(AccessLevel.NONE) static public final long CLOSED = 6L;
+	
+	@Getter(AccessLevel.NONE) private static final ConcurrentMap<Long, Status> instances = new ConcurrentHashMap<>();
+	
+	private final Long id;
+	private final String name;
+	
+	private Status(Long id, String name) {
+		this.id = id;
+		this.name = name;
+	}
+	
+	
+	// a renamed status replaces the shared instance, the ones already decoded keep the old name.
+	@JsonCreator
+	public static Status of(@JsonProperty("id") Long id, @JsonProperty("name") String name) {
+		if (id == null) {
+			return new Status(null, name);
+		}
+		
+		Status status = instances.get(id);
+		if (status == null || !Objects.equals(status.name, name)) {
+			status = new Status(id, name);
+			instances.put(id, status);
+		}
+		
+		return status;
+	}
+	
 	
-	private Long id;
-	private String name;
+	public boolean is(long statusId) {
+		return id != null && id == statusId;
+	}
 }
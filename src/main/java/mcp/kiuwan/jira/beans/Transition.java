@@ -32,5 +32,21 @@ import lombok.Setter;
 @Setter
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class Transition {
-	@Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE) static public final Long CLOSE = 701L;
+	@Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE) static public final String CLOSE = "Close";
+	
+	private Long id;
+	private String name;
+	private Status to;
+	
+	
+	// exact (case insensitive) match, or a transition name starting with the given one ("Close" -> "Close Issue").
+	public boolean matches(String transitionName) {
+		if (name == null || transitionName == null) {
+			return false;
+		}
+		
+		String n = name.trim().toLowerCase();
+		String t = transitionName.trim().toLowerCase();
+		return n.equals(t) || n.startsWith(t + " ");
+	}
 }
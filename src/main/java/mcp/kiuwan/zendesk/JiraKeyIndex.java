@@ -0,0 +1,84 @@
+// MIT License
+//
+// Copyright (c) 2019 Marcos Cacabelos Prol
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+
+
+package mcp.kiuwan.zendesk;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import mcp.kiuwan.zendesk.beans.Ticket;
+
+// jira key -> every ticket of a view linked to it. each ticket is kept once, by id, in a ticket index (within its
+// heap budget); the keys only hold ticket ids. built by one thread; lookups are thread safe.
+public class JiraKeyIndex implements Closeable {
+	private Map<String, List<Long>> ticketIds = new HashMap<>();
+	private TicketIndex tickets;
+	
+	public JiraKeyIndex(TicketIndex tickets) {
+		this.tickets = tickets;
+	}
+	
+	
+	public synchronized void add(Ticket ticket, List<String> jiraKeys) {
+		if (jiraKeys.isEmpty()) {
+			return;
+		}
+		
+		tickets.put(ticket.getId().toString(), ticket);
+		jiraKeys.forEach(jiraKey -> {
+			List<Long> ids = ticketIds.computeIfAbsent(jiraKey, k -> new ArrayList<>(1));
+			if (!ids.contains(ticket.getId())) {
+				ids.add(ticket.getId());
+			}
+		});
+	}
+	
+	
+	public synchronized List<Ticket> get(String jiraKey) {
+		List<Long> ids = ticketIds.get(jiraKey);
+		if (ids == null) {
+			return Collections.emptyList();
+		}
+		
+		List<Ticket> linked = new ArrayList<>(ids.size());
+		ids.forEach(id -> linked.add(tickets.get(id.toString())));
+		return linked;
+	}
+	
+	
+	// number of jira keys.
+	public synchronized int size() {
+		return ticketIds.size();
+	}
+	
+	
+	@Override
+	public synchronized void close() throws IOException {
+		tickets.close();
+	}
+}
@@ -0,0 +1,230 @@
+// MIT License
+//
+// Copyright (c) 2019 Marcos Cacabelos Prol
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+
+
+package mcp.kiuwan.zendesk;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import lombok.Getter;
+import mcp.kiuwan.jira.JiraClient;
+import mcp.kiuwan.jira.beans.Issue;
+import mcp.kiuwan.jira.beans.Status;
+import mcp.kiuwan.zendesk.beans.Ticket;
+
+// the writes of a release, worked out from the fetched tickets and issues before any of them is sent. one unit per
+// ticket (with all its keys) or per key without ticket: a ticket is never updated twice nor by two threads at the
+// same time. steps already done are left out: issues whose release notes have the release message (comment and
+// release notes go in a single edit), transitions of issues already closed and, only when asked, tickets with
+// 'released' substatus (it does not tell which release, so by default every ticket gets the comment of this one).
+@Getter
+public class ReleasePlan {
+	private List<Unit> units = new ArrayList<>();
+	private String transitionName;
+	
+	private int ticketUpdates;
+	private int issueUpdates;
+	private int transitions;
+	// transitions are looked up once per workflow step (project, status), with one of its issues.
+	private List<Issue> transitionLookups = new ArrayList<>();
+	private int doneSteps;
+	private int missingIssues;
+	
+	public ReleasePlan(Collection<String> jiraKeys, Map<String, Ticket> ticketsWithIssue, Map<String, Issue> jiraIssues, String releaseMessage, String transitionName, Long substatusFieldId, boolean skipReleasedTickets) {
+		this.transitionName = transitionName;
+		
+		Map<Long, Unit> ticketUnits = new LinkedHashMap<>();
+		new LinkedHashSet<>(jiraKeys).forEach(jiraKey -> {
+			Ticket ticket = ticketsWithIssue.get(jiraKey);
+			Unit unit = (ticket != null ? ticketUnits.get(ticket.getId()) : null);
+			if (unit == null) {
+				unit = new Unit(ticket != null ? "ticket:" + ticket.getId() : "key:" + jiraKey, ticket);
+				units.add(unit);
+				if (ticket != null) {
+					ticketUnits.put(ticket.getId(), unit);
+				}
+			}
+			unit.keys.add(jiraKey);
+			unit.steps.add(new IssueStep(jiraKey, jiraIssues.get(jiraKey), releaseMessage));
+		});
+		
+		Set<String> workflowSteps = new HashSet<>();
+		for (Unit unit : units) {
+			if (unit.ticket != null) {
+				unit.ticketUpdate = !(skipReleasedTickets && unit.ticket.isReleased(substatusFieldId));
+				if (unit.ticketUpdate) {
+					ticketUpdates++;
+				} else {
+					doneSteps++;
+				}
+			}
+			for (IssueStep step : unit.steps) {
+				if (step.issue == null) {
+					missingIssues++;
+					continue;
+				}
+				issueUpdates += (step.update ? 1 : 0);
+				transitions += (step.transition ? 1 : 0);
+				doneSteps += (step.update ? 0 : 1) + (isStatus(step.issue, Status.CLOSED) ? 1 : 0);
+				if (step.transition && workflowSteps.add(JiraClient.getWorkflowStep(step.issue))) {
+					transitionLookups.add(step.issue);
+				}
+			}
+		}
+	}
+	
+	
+	public int getZendeskCalls() {
+		return ticketUpdates;
+	}
+	
+	
+	public int getJiraCalls() {
+		return issueUpdates + transitions + transitionLookups.size();
+	}
+	
+	
+	// calls saved by sending the comment and the release notes of an issue in the same edit.
+	public int getMergedCalls() {
+		return issueUpdates;
+	}
+	
+	
+	// milliseconds: units run in parallel in 'threads', their calls one after the other, and the calls of each host
+	// within its limit of calls in flight.
+	public long estimateMillis(int threads, int jiraLimit, int zendeskLimit, double jiraLatency, double zendeskLatency) {
+		double serial = transitionLookups.size() * jiraLatency;
+		double longest = 0;
+		for (Unit unit : units) {
+			double millis = (unit.ticketUpdate ? zendeskLatency : 0) + unit.getJiraWrites() * jiraLatency;
+			serial += millis;
+			longest = Math.max(longest, millis);
+		}
+		
+		double wall = Math.max(serial / Math.max(1, threads), longest);
+		wall = Math.max(wall, getJiraCalls() * jiraLatency / Math.max(1, jiraLimit));
+		wall = Math.max(wall, getZendeskCalls() * zendeskLatency / Math.max(1, zendeskLimit));
+		return Math.round(wall);
+	}
+	
+	
+	public void print(PrintStream out) {
+		for (Issue issue : transitionLookups) {
+			out.println("jira: GET transitions of " + JiraClient.getWorkflowStep(issue) + " (" + issue.getKey() + ")");
+		}
+		for (Unit unit : units) {
+			out.println(unit.id + " [" + String.join(" ", unit.keys) + "]");
+			if (unit.ticket != null) {
+				out.println("   zendesk: " + (unit.ticketUpdate ? "PUT ticket " + unit.ticket.getId() + " (comment, substatus '" + Ticket.RELEASED + "')" : "ticket " + unit.ticket.getId() + " already released, skipped"));
+			}
+			for (IssueStep step : unit.steps) {
+				if (step.issue == null) {
+					out.println("   jira: " + step.key + " not found, fails");
+					continue;
+				}
+				if (step.update) {
+					out.println("   jira: PUT " + step.key + " (comment, release notes)");
+				} else {
+					out.println("   jira: " + step.key + " release notes already written, skipped");
+				}
+				if (step.transition) {
+					out.println("   jira: POST " + step.key + " transition '" + transitionName + "'");
+				} else if (isStatus(step.issue, Status.CLOSED)) {
+					out.println("   jira: " + step.key + " already closed, skipped");
+				}
+			}
+		}
+	}
+	
+	
+	@Override
+	public String toString() {
+		return "release plan: units=" + units.size() + ", ticketUpdates=" + ticketUpdates + ", issueUpdates=" + issueUpdates
+			+ ", transitions=" + transitions + ", transitionLookups=" + transitionLookups.size() + ", doneSteps=" + doneSteps
+			+ ", missingIssues=" + missingIssues + ", zendeskCalls=" + getZendeskCalls() + ", jiraCalls=" + getJiraCalls()
+			+ ", mergedCalls=" + getMergedCalls();
+	}
+	
+	
+	private static boolean isStatus(Issue issue, long statusId) {
+		return issue.getFields() != null && issue.getFields().getStatus() != null && issue.getFields().getStatus().is(statusId);
+	}
+	
+	
+	@Getter
+	public static class Unit {
+		private String id;
+		private Ticket ticket;
+		private List<String> keys = new ArrayList<>();
+		private List<IssueStep> steps = new ArrayList<>();
+		private boolean ticketUpdate;
+		
+		private Unit(String id, Ticket ticket) {
+			this.id = id;
+			this.ticket = ticket;
+		}
+		
+		
+		// the issues of the ticket comment (null when not found), in key order.
+		public List<Issue> getIssues() {
+			return steps.stream().map(IssueStep::getIssue).collect(Collectors.toList());
+		}
+		
+		
+		private int getJiraWrites() {
+			return steps.stream().mapToInt(step -> (step.update ? 1 : 0) + (step.transition ? 1 : 0)).sum();
+		}
+	}
+	
+	
+	@Getter
+	public static class IssueStep {
+		private String key;
+		private Issue issue;
+		private boolean update;
+		private boolean transition;
+		
+		private IssueStep(String key, Issue issue, String releaseMessage) {
+			this.key = key;
+			this.issue = issue;
+			if (issue != null) {
+				String releaseNotes = (issue.getFields() != null ? issue.getFields().getCustomfield_10321() : null);
+				update = (releaseNotes == null || releaseMessage == null || releaseMessage.trim().isEmpty() || !releaseNotes.contains(releaseMessage.trim()));
+				transition = isStatus(issue, Status.RESOLVED);
+			}
+		}
+		
+		
+		public boolean isDone() {
+			return issue != null && !update && !transition;
+		}
+	}
+}
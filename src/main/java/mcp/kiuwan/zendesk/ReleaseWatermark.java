@@ -0,0 +1,100 @@
+// MIT License
+//
+// Copyright (c) 2019 Marcos Cacabelos Prol
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+
+package mcp.kiuwan.zendesk;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.Properties;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// time of the last jql release and the keys it released. the next run only asks for issues updated since then;
+// the keys released by the last run are updated by the release itself, so they are skipped when they come back.
+public class ReleaseWatermark {
+	private final static String UPDATED = "updated";
+	private final static String RELEASED = "released";
+	
+	private static Logger logger = LoggerFactory.getLogger(ReleaseWatermark.class);
+	
+	private File file;
+	private Long updated;
+	private Set<String> released = Collections.emptySet();
+	
+	public ReleaseWatermark(File file) {
+		this.file = file;
+		
+		if (file.isFile()) {
+			Properties properties = new Properties();
+			try (InputStream input = new FileInputStream(file)) {
+				properties.load(input);
+				updated = Long.valueOf(properties.getProperty(UPDATED));
+				released = new LinkedHashSet<>(Arrays.asList(properties.getProperty(RELEASED, "").trim().split("[\\s]+")));
+			} catch (IOException | RuntimeException e) {
+				logger.warn("Cannot read watermark '{}', searching without it: {}", file, e.getMessage());
+				updated = null;
+				released = Collections.emptySet();
+			}
+		}
+	}
+	
+	
+	// jira jql minute resolution, in the time zone of this jvm (it has to be the one of the jira user).
+	public String restrict(String jql) {
+		if (updated == null) {
+			return jql;
+		}
+		
+		return "(" + jql + ") AND updated >= \"" + new SimpleDateFormat("yyyy/MM/dd HH:mm").format(new Date(updated)) + "\"";
+	}
+	
+	
+	public boolean wasReleased(String jiraKey) {
+		return released.contains(jiraKey);
+	}
+	
+	
+	public void save(long updated, Collection<String> released) {
+		Properties properties = new Properties();
+		properties.setProperty(UPDATED, Long.toString(updated));
+		properties.setProperty(RELEASED, String.join(" ", released));
+		
+		try (OutputStream output = new FileOutputStream(file)) {
+			properties.store(output, "last jql release");
+			logger.info("Watermark '{}' saved: '{}'.", file, new Date(updated));
+		} catch (IOException e) {
+			logger.warn("Cannot write watermark '{}': {}", file, e.getMessage());
+		}
+	}
+}
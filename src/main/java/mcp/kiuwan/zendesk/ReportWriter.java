@@ -0,0 +1,169 @@
+// MIT License
+//
+// Copyright (c) 2019 Marcos Cacabelos Prol
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+
+package mcp.kiuwan.zendesk;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.stream.Collectors;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import mcp.kiuwan.http.JsonMapper;
+import mcp.kiuwan.jira.beans.Issue;
+import mcp.kiuwan.zendesk.beans.Field;
+import mcp.kiuwan.zendesk.beans.Ticket;
+
+// writes one record per ticket/issue pair as they are produced, through a fixed size buffer.
+public class ReportWriter implements Closeable {
+	public enum Format { NDJSON, CSV }
+	
+	private final static String[] COLUMNS = { "ticket", "jiraKey", "substatus", "status", "resolution", "releaseNotes" };
+	private final static int BUFFER_SIZE = 64 * 1024;
+	
+	private Format format;
+	private Long substatusFieldId;
+	private FileChannel channel;
+	private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private long count;
+
+	public ReportWriter(Format format, Path path, Long substatusFieldId) throws IOException {
+		this.format = format;
+		this.substatusFieldId = substatusFieldId;
+		this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		
+		if (format == Format.CSV) {
+			writeLine(String.join(",", COLUMNS));
+		}
+	}
+	
+	
+	public static Format parseFormat(String format) {
+		return Format.valueOf(format.trim().toUpperCase());
+	}
+	
+	
+	public synchronized void write(Ticket ticket, String jiraKey, Issue issue) throws IOException {
+		String[] values = new String[] {
+			(ticket != null && ticket.getId() != null ? ticket.getId().toString() : null),
+			jiraKey,
+			getSubstatus(ticket),
+			(issue != null && issue.getFields() != null && issue.getFields().getStatus() != null ? issue.getFields().getStatus().getName() : null),
+			(issue != null && issue.getFields() != null && issue.getFields().getResolution() != null ? issue.getFields().getResolution().getName() : null),
+			(issue != null && issue.getFields() != null ? issue.getFields().getCustomfield_10321() : null)
+		};
+		
+		writeLine(format == Format.CSV ? toCsv(values) : toJson(values));
+		count++;
+	}
+	
+	
+	public long getCount() {
+		return count;
+	}
+	
+	
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			channel.close();
+		}
+	}
+	
+	
+	// null when the ticket has no value (not the '{}' placeholder of Ticket.getFieldValue).
+	private String getSubstatus(Ticket ticket) {
+		Field field = (ticket == null || ticket.getFields() == null ? null : ticket.getFields().stream().filter(f -> substatusFieldId.equals(f.getId())).findFirst().orElse(null));
+		if (field == null || field.getValue() == null) {
+			return null;
+		}
+		
+		Object value = field.getValue();
+		if (value instanceof Collection) {
+			return ((Collection<?>) value).stream().map(String::valueOf).collect(Collectors.joining(" "));
+		}
+		return value.toString();
+	}
+	
+	
+	private String toJson(String[] values) {
+		ObjectNode node = JsonMapper.objectNode();
+		for (int i = 0; i < COLUMNS.length; i++) {
+			node.put(COLUMNS[i], values[i]);
+		}
+		
+		return JsonMapper.writeValueAsString(node);
+	}
+	
+	
+	private String toCsv(String[] values) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			String value = (values[i] != null ? values[i] : "");
+			if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+				sb.append('"').append(value.replace("\"", "\"\"")).append('"');
+			} else {
+				sb.append(value);
+			}
+		}
+		
+		return sb.toString();
+	}
+	
+	
+	private void writeLine(String line) throws IOException {
+		byte[] bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+		
+		if (bytes.length > buffer.remaining()) {
+			flush();
+		}
+		
+		if (bytes.length > buffer.capacity()) {
+			ByteBuffer large = ByteBuffer.wrap(bytes);
+			while (large.hasRemaining()) {
+				channel.write(large);
+			}
+		} else {
+			buffer.put(bytes);
+		}
+	}
+	
+	
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+}
@@ -0,0 +1,249 @@
+// MIT License
+//
+// Copyright (c) 2019 Marcos Cacabelos Prol
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+
+package mcp.kiuwan.zendesk;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import mcp.kiuwan.http.Deadline;
+import mcp.kiuwan.http.Digests;
+
+// splits a release among worker processes sharing a directory. a shard is leased by holding an exclusive lock
+// on 'shard-<n>.lock' (released by the os if the worker dies), finished shards get a 'shard-<n>.done' marker
+// and every released item is appended to 'journal.log', so a shard taken over skips what is already done.
+// the state of each release is kept in its own 'release-<hash>' subdirectory (hash of the message and the units),
+// so markers and journal of a previous release are never taken for this one.
+public class ShardCoordinator {
+	public final static String RELEASED = "released";
+	public final static String FAILED = "failed";
+	
+	private final static String JOURNAL = "journal.log";
+	private final static long POLL_MILLIS = 1000L;
+	
+	private static Logger logger = LoggerFactory.getLogger(ShardCoordinator.class);
+
+	private File baseDir;
+	private File dir;
+	private int shardCount;
+	private String workerId;
+	
+	public ShardCoordinator(File baseDir, int shardCount, String workerId) {
+		this.baseDir = baseDir;
+		this.shardCount = shardCount;
+		this.workerId = workerId;
+	}
+	
+	
+	// the workers of a release must see the same units (started together, or from the same snapshot).
+	public void begin(String message, Collection<String> unitIds) throws IOException {
+		List<String> ids = new ArrayList<>(unitIds);
+		Collections.sort(ids);
+		
+		dir = new File(baseDir, "release-" + hash(message + "\n" + String.join("\n", ids)));
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Unable to create shard directory '" + dir + "'.");
+		}
+		logger.info("Worker '{}' joined release '{}' ('{}' units).", workerId, dir.getName(), ids.size());
+	}
+	
+	
+	// the same for every worker, as long as they all use the same shard count.
+	public int getShard(String unitId) {
+		return Math.floorMod(unitId.hashCode(), shardCount);
+	}
+	
+	
+	// next shard leased by this worker; waits while the pending ones are leased by others, null when all are done
+	// or the deadline expires.
+	public Shard claim(Deadline deadline) throws IOException, InterruptedException {
+		while (!deadline.isExpired()) {
+			boolean pending = false;
+			for (int index = 0; index < shardCount; index++) {
+				if (isDone(index)) {
+					continue;
+				}
+				pending = true;
+				
+				Shard shard = tryLease(index);
+				if (shard != null) {
+					if (!isDone(index)) {
+						logger.info("Worker '{}' leased shard '{}'.", workerId, index);
+						return shard;
+					}
+					shard.close();
+				}
+			}
+			
+			if (!pending) {
+				return null;
+			}
+			Thread.sleep(Math.min(POLL_MILLIS, Math.max(1L, deadline.remainingMillis())));
+		}
+		
+		return null;
+	}
+	
+	
+	public void complete(Shard shard) throws IOException {
+		Files.write(doneFile(shard.index).toPath(), workerId.getBytes(StandardCharsets.UTF_8));
+		logger.info("Worker '{}' completed shard '{}'.", workerId, shard.index);
+		shard.close();
+	}
+	
+	
+	// items of the shard already released, by any worker.
+	public Set<String> getReleased(int shard) throws IOException {
+		Set<String> released = new HashSet<>();
+		File journal = new File(dir, JOURNAL);
+		if (!journal.isFile()) {
+			return released;
+		}
+		
+		List<String> lines = Files.readAllLines(journal.toPath(), StandardCharsets.UTF_8);
+		lines.forEach(line -> {
+			String[] columns = line.split("\t");
+			if (columns.length == 5 && columns[2].equals(Integer.toString(shard)) && RELEASED.equals(columns[4])) {
+				released.add(columns[3]);
+			}
+		});
+		
+		return released;
+	}
+	
+	
+	// items of the release, by any worker, whose last journal entry is a failure.
+	public Set<String> getFailed() throws IOException {
+		Map<String, String> last = new HashMap<>();
+		File journal = new File(dir, JOURNAL);
+		if (journal.isFile()) {
+			Files.readAllLines(journal.toPath(), StandardCharsets.UTF_8).forEach(line -> {
+				String[] columns = line.split("\t");
+				if (columns.length == 5) {
+					last.put(columns[3], columns[4]);
+				}
+			});
+		}
+		
+		Set<String> failed = new HashSet<>();
+		last.forEach((item, status) -> {
+			if (FAILED.equals(status)) {
+				failed.add(item);
+			}
+		});
+		
+		return failed;
+	}
+	
+	
+	public synchronized void journal(int shard, String item, String status) throws IOException {
+		String line = Instant.now() + "\t" + workerId + "\t" + shard + "\t" + item + "\t" + status + "\n";
+		
+		try (FileChannel channel = FileChannel.open(new File(dir, JOURNAL).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+			FileLock lock = channel.lock()) {
+			ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+	}
+	
+	
+	public boolean isDone(int index) {
+		return doneFile(index).isFile();
+	}
+	
+	
+	private File doneFile(int index) {
+		return new File(dir, "shard-" + index + ".done");
+	}
+	
+	
+	// first 8 bytes of the sha-256, as hex.
+	private static String hash(String value) {
+		return Digests.sha256Hex(value).substring(0, 16);
+	}
+	
+	
+	private Shard tryLease(int index) throws IOException {
+		FileChannel channel = FileChannel.open(new File(dir, "shard-" + index + ".lock").toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		try {
+			FileLock lock = channel.tryLock();
+			if (lock != null) {
+				return new Shard(index, channel, lock);
+			}
+		} catch (OverlappingFileLockException e) {
+			// leased by this same process.
+		}
+		
+		channel.close();
+		return null;
+	}
+	
+	
+	public static class Shard implements Closeable {
+		private int index;
+		private FileChannel channel;
+		private FileLock lock;
+		
+		private Shard(int index, FileChannel channel, FileLock lock) {
+			this.index = index;
+			this.channel = channel;
+			this.lock = lock;
+		}
+		
+		
+		public int getIndex() {
+			return index;
+		}
+		
+		
+		@Override
+		public void close() throws IOException {
+			try {
+				lock.release();
+			} finally {
+				channel.close();
+			}
+		}
+	}
+}
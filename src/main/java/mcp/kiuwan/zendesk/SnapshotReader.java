@@ -0,0 +1,190 @@
+// MIT License
+//
+// Copyright (c) 2019 Marcos Cacabelos Prol
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+
+package mcp.kiuwan.zendesk;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import mcp.kiuwan.http.JsonMapper;
+import mcp.kiuwan.jira.beans.Issue;
+import mcp.kiuwan.zendesk.beans.Ticket;
+
+// reads a snapshot written by SnapshotWriter through a memory mapped buffer. only the offsets are indexed when
+// opened, tickets and issues are decoded when they are looked up.
+public class SnapshotReader implements Closeable {
+	private FileChannel channel;
+	private ByteBuffer buffer;
+	
+	private long created;
+	private Long jiraFieldId;
+	private Long substatusFieldId;
+	private String viewId;
+	
+	private Map<Long, Integer> ticketOffsets = new HashMap<>();
+	private Map<String, Long> links = new LinkedHashMap<>();
+	private Map<String, Integer> issueOffsets = new LinkedHashMap<>();
+	private Map<Long, Ticket> tickets = new HashMap<>();
+
+	public SnapshotReader(Path path) throws IOException {
+		channel = FileChannel.open(path, StandardOpenOption.READ);
+		buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		
+		if (buffer.remaining() < 6 || buffer.getInt() != SnapshotWriter.MAGIC) {
+			throw new IOException("'" + path + "' is not a snapshot.");
+		}
+		short version = buffer.getShort();
+		if (version != SnapshotWriter.VERSION) {
+			throw new IOException("'" + path + "' has snapshot version '" + version + "', expected '" + SnapshotWriter.VERSION + "'.");
+		}
+		
+		created = buffer.getLong();
+		jiraFieldId = buffer.getLong();
+		substatusFieldId = buffer.getLong();
+		viewId = readString();
+		int ticketCount = buffer.getInt();
+		int linkCount = buffer.getInt();
+		int issueCount = buffer.getInt();
+		
+		for (int i = 0; i < ticketCount; i++) {
+			ticketOffsets.put(buffer.getLong(), skipBytes());
+		}
+		for (int i = 0; i < linkCount; i++) {
+			links.put(readString(), buffer.getLong());
+		}
+		for (int i = 0; i < issueCount; i++) {
+			issueOffsets.put(readString(), skipBytes());
+		}
+	}
+	
+	
+	public long getCreated() {
+		return created;
+	}
+	
+	
+	public Long getJiraFieldId() {
+		return jiraFieldId;
+	}
+	
+	
+	public Long getSubstatusFieldId() {
+		return substatusFieldId;
+	}
+	
+	
+	public String getViewId() {
+		return viewId;
+	}
+	
+	
+	// jira key -> ticket, in view order; tickets with several keys are the same instance.
+	public synchronized Map<String, Ticket> getTicketsWithIssue() throws IOException {
+		Map<String, Ticket> ticketsWithIssue = new LinkedHashMap<>();
+		for (Map.Entry<String, Long> link : links.entrySet()) {
+			ticketsWithIssue.put(link.getKey(), getTicket(link.getValue()));
+		}
+		
+		return ticketsWithIssue;
+	}
+	
+	
+	public synchronized Ticket getTicket(Long id) throws IOException {
+		Ticket ticket = tickets.get(id);
+		if (ticket == null) {
+			Integer offset = ticketOffsets.get(id);
+			if (offset == null) {
+				return null;
+			}
+			ticket = JsonMapper.get().readValue(readBytes(offset), Ticket.class);
+			tickets.put(id, ticket);
+		}
+		
+		return ticket;
+	}
+	
+	
+	// in snapshot order.
+	public Set<String> getIssueKeys() {
+		return Collections.unmodifiableSet(issueOffsets.keySet());
+	}
+	
+	
+	public Issue getIssue(String jiraKey) throws IOException {
+		Integer offset = issueOffsets.get(jiraKey);
+		return (offset != null ? JsonMapper.get().readValue(readBytes(offset), Issue.class) : null);
+	}
+	
+	
+	public Map<String, Issue> getIssues(Collection<String> jiraKeys) throws IOException {
+		Map<String, Issue> issues = new HashMap<>();
+		for (String jiraKey : jiraKeys) {
+			Issue issue = getIssue(jiraKey);
+			if (issue != null) {
+				issues.put(jiraKey, issue);
+			}
+		}
+		
+		return issues;
+	}
+	
+	
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+	
+	
+	private String readString() {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	
+	// offset of the length prefix.
+	private int skipBytes() {
+		int offset = buffer.position();
+		buffer.position(offset + 4 + buffer.getInt());
+		return offset;
+	}
+	
+	
+	private byte[] readBytes(int offset) {
+		ByteBuffer view = buffer.duplicate();
+		view.position(offset);
+		byte[] bytes = new byte[view.getInt()];
+		view.get(bytes);
+		return bytes;
+	}
+}
@@ -0,0 +1,161 @@
+// MIT License
+//
+// Copyright (c) 2019 Marcos Cacabelos Prol
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+
+package mcp.kiuwan.zendesk;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import mcp.kiuwan.http.JsonMapper;
+import mcp.kiuwan.jira.beans.Issue;
+import mcp.kiuwan.zendesk.beans.Ticket;
+
+// collects the tickets and issues fetched during a run and writes them as a length-prefixed snapshot, read
+// back by SnapshotReader. tickets are projected to the jira and substatus fields.
+//
+// layout: magic, version, created, jira field id, substatus field id, view id, ticket/link/issue counts, then
+//   tickets (id, json), links (jira key, ticket id) and issues (key, json); strings and json are prefixed by their
+//   length in bytes.
+public class SnapshotWriter {
+	final static int MAGIC = 0x5A43534E;
+	final static short VERSION = 1;
+	
+	private Path path;
+	private Long jiraFieldId;
+	private Long substatusFieldId;
+	private String viewId;
+	// the index of the view, read (not copied) on write: it may be spilled to disk.
+	private Map<String, Ticket> ticketsWithIssue = Collections.emptyMap();
+	private Map<String, Issue> issues = new ConcurrentHashMap<>();
+	private int ticketCount;
+	
+	public SnapshotWriter(Path path, Long jiraFieldId, Long substatusFieldId) {
+		this.path = path;
+		this.jiraFieldId = jiraFieldId;
+		this.substatusFieldId = substatusFieldId;
+	}
+	
+	
+	// the index must stay open until write.
+	public synchronized void addTickets(String viewId, Map<String, Ticket> ticketsWithIssue) {
+		this.viewId = viewId;
+		this.ticketsWithIssue = ticketsWithIssue;
+	}
+	
+	
+	public void addIssue(String jiraKey, Issue issue) {
+		if (issue != null) {
+			issues.put(jiraKey, issue);
+		}
+	}
+	
+	
+	public int getIssueCount() {
+		return issues.size();
+	}
+	
+	
+	// tickets written by the last write.
+	public synchronized int getTicketCount() {
+		return ticketCount;
+	}
+	
+	
+	// written to a temporary file and moved, a reader never sees a partial snapshot. the index is streamed (a first
+	// pass counts tickets and links for the header); only the ticket ids are kept in memory.
+	public synchronized void write() throws IOException {
+		Set<Long> ticketIds = new HashSet<>();
+		int links = 0;
+		for (Map.Entry<String, Ticket> link : ticketsWithIssue.entrySet()) {
+			ticketIds.add(link.getValue().getId());
+			links++;
+		}
+		ticketCount = ticketIds.size();
+		ticketIds.clear();
+		
+		Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 64 * 1024))) {
+			out.writeInt(MAGIC);
+			out.writeShort(VERSION);
+			out.writeLong(System.currentTimeMillis());
+			out.writeLong(jiraFieldId);
+			out.writeLong(substatusFieldId);
+			writeString(out, viewId != null ? viewId : "");
+			out.writeInt(ticketCount);
+			out.writeInt(links);
+			out.writeInt(issues.size());
+			
+			for (Ticket ticket : ticketsWithIssue.values()) {
+				if (ticketIds.add(ticket.getId())) {
+					out.writeLong(ticket.getId());
+					writeBytes(out, JsonMapper.get().writeValueAsBytes(project(ticket)));
+				}
+			}
+			for (Map.Entry<String, Ticket> link : ticketsWithIssue.entrySet()) {
+				writeString(out, link.getKey());
+				out.writeLong(link.getValue().getId());
+			}
+			for (Map.Entry<String, Issue> issue : issues.entrySet()) {
+				writeString(out, issue.getKey());
+				writeBytes(out, JsonMapper.get().writeValueAsBytes(issue.getValue()));
+			}
+		}
+		
+		Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	
+	private Ticket project(Ticket ticket) {
+		Ticket projected = new Ticket();
+		projected.setId(ticket.getId());
+		if (ticket.getFields() != null) {
+			projected.setFields(ticket.getFields().stream()
+				.filter(field -> jiraFieldId.equals(field.getId()) || substatusFieldId.equals(field.getId()))
+				.collect(Collectors.toCollection(ArrayList::new)));
+		}
+		
+		return projected;
+	}
+	
+	
+	private void writeString(DataOutputStream out, String value) throws IOException {
+		writeBytes(out, value.getBytes(StandardCharsets.UTF_8));
+	}
+	
+	
+	private void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+}
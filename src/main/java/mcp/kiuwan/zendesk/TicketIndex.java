@@ -0,0 +1,428 @@
+// MIT License
+//
+// Copyright (c) 2019 Marcos Cacabelos Prol
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+
+package mcp.kiuwan.zendesk;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import mcp.kiuwan.http.JsonMapper;
+import mcp.kiuwan.zendesk.beans.Ticket;
+
+// jira key -> ticket of a view, in insertion order. entries stay on heap up to a budget (estimated from their json
+// size), the rest are spilled to disk: tickets appended as json records to a data file, located by an off heap
+// open addressing table of (key hash, record offset) slots. built by one thread; lookups are thread safe.
+// the table is a direct buffer, not a mapped file: a mapped file cannot be deleted on windows until it is unmapped.
+public class TicketIndex extends AbstractMap<String, Ticket> implements Closeable {
+	private final static int SLOT_BYTES = 12;
+	private final static int RECORD_HEADER = 13;
+	private final static byte FIRST = 0;
+	private final static byte REPLACEMENT = 1;
+	private final static int WRITE_BUFFER = 64 * 1024;
+	private final static int READ_BUFFER = 1024 * 1024;
+	private final static int INITIAL_SLOTS = 1 << 16;
+	// heap bytes of a decoded ticket per byte of its json, roughly.
+	private final static int HEAP_PER_JSON_BYTE = 3;
+	
+	private static Logger logger = LoggerFactory.getLogger(TicketIndex.class);
+	
+	private long heapBudget;
+	private File dir;
+	
+	private LinkedHashMap<String, Ticket> heap = new LinkedHashMap<>();
+	private long heapBytes;
+	
+	private File dataFile;
+	private FileChannel data;
+	private ByteBuffer pending = ByteBuffer.allocate(WRITE_BUFFER);
+	private long flushed;
+	private long dataSize;
+	
+	private ByteBuffer table;
+	private int slots;
+	private int spilled;
+	
+	public TicketIndex(long heapBudget, File dir) {
+		this.heapBudget = heapBudget;
+		this.dir = dir;
+	}
+	
+	
+	@Override
+	public synchronized Ticket put(String jiraKey, Ticket ticket) {
+		// no budget: nothing to estimate.
+		if (heap.containsKey(jiraKey) || heapBudget == Long.MAX_VALUE) {
+			return heap.put(jiraKey, ticket);
+		}
+		
+		try {
+			byte[] json = JsonMapper.get().writeValueAsBytes(ticket);
+			long bytes = (long) json.length * HEAP_PER_JSON_BYTE + jiraKey.length() * 2 + 64;
+			if (data == null && heapBytes + bytes <= heapBudget) {
+				heapBytes += bytes;
+				return heap.put(jiraKey, ticket);
+			}
+			
+			if (data == null) {
+				openSpill();
+			}
+			return spill(jiraKey, json);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	
+	@Override
+	public synchronized Ticket get(Object key) {
+		Ticket ticket = heap.get(key);
+		if (ticket != null || data == null || !(key instanceof String)) {
+			return ticket;
+		}
+		
+		try {
+			long first = find((String) key);
+			return (first >= 0 ? readTicket(first) : null);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	
+	@Override
+	public synchronized boolean containsKey(Object key) {
+		if (heap.containsKey(key)) {
+			return true;
+		}
+		
+		try {
+			return data != null && key instanceof String && find((String) key) >= 0;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	
+	@Override
+	public synchronized int size() {
+		return heap.size() + spilled;
+	}
+	
+	
+	public synchronized int getSpilled() {
+		return spilled;
+	}
+	
+	
+	// heap entries, then the spilled ones in the order they were written (replaced records are skipped).
+	@Override
+	public Set<Map.Entry<String, Ticket>> entrySet() {
+		return new AbstractSet<Map.Entry<String, Ticket>>() {
+			@Override
+			public Iterator<Map.Entry<String, Ticket>> iterator() {
+				return new EntryIterator();
+			}
+			
+			@Override
+			public int size() {
+				return TicketIndex.this.size();
+			}
+		};
+	}
+	
+	
+	@Override
+	public synchronized void close() throws IOException {
+		if (data != null) {
+			data.close();
+			data = null;
+			dataFile.delete();
+			table = null;
+		}
+	}
+	
+	
+	private void openSpill() throws IOException {
+		dir.mkdirs();
+		dataFile = File.createTempFile("ticket-index-", ".data", dir);
+		dataFile.deleteOnExit();
+		data = new RandomAccessFile(dataFile, "rw").getChannel();
+		allocateTable(INITIAL_SLOTS);
+		logger.debug("Ticket index over '{}' heap bytes, spilling to '{}'.", heapBudget, dataFile);
+	}
+	
+	
+	private void allocateTable(int newSlots) {
+		ByteBuffer newTable = ByteBuffer.allocateDirect(newSlots * SLOT_BYTES);
+		
+		// rehash: slots keep the key hash, keys are unique, no record has to be read.
+		if (table != null) {
+			for (int i = 0; i < slots; i++) {
+				long offset = table.getLong(i * SLOT_BYTES + 4);
+				if (offset != 0) {
+					int hash = table.getInt(i * SLOT_BYTES);
+					int slot = hash & (newSlots - 1);
+					while (newTable.getLong(slot * SLOT_BYTES + 4) != 0) {
+						slot = (slot + 1) & (newSlots - 1);
+					}
+					newTable.putInt(slot * SLOT_BYTES, hash);
+					newTable.putLong(slot * SLOT_BYTES + 4, offset);
+				}
+			}
+		}
+		
+		table = newTable;
+		slots = newSlots;
+	}
+	
+	
+	// a replaced key keeps its first record (and its place in the iteration order), which points to the last one.
+	private Ticket spill(String jiraKey, byte[] json) throws IOException {
+		int hash = hash(jiraKey);
+		int slot = hash & (slots - 1);
+		long first;
+		while ((first = table.getLong(slot * SLOT_BYTES + 4)) != 0) {
+			long record = first - 1;
+			if (table.getInt(slot * SLOT_BYTES) == hash && jiraKey.equals(readKey(record))) {
+				Ticket previous = readTicket(record);
+				writeLong(record + 1, append(REPLACEMENT, jiraKey, json));
+				return previous;
+			}
+			slot = (slot + 1) & (slots - 1);
+		}
+		
+		table.putInt(slot * SLOT_BYTES, hash);
+		table.putLong(slot * SLOT_BYTES + 4, append(FIRST, jiraKey, json) + 1);
+		spilled++;
+		
+		// at most half full: short probe sequences.
+		if (spilled * 2 > slots) {
+			allocateTable(slots * 2);
+		}
+		
+		return null;
+	}
+	
+	
+	// record: kind, offset of the replacement (0: none), key length, key, json length, json.
+	private long append(byte kind, String jiraKey, byte[] json) throws IOException {
+		byte[] key = jiraKey.getBytes(StandardCharsets.UTF_8);
+		int length = RECORD_HEADER + key.length + 4 + json.length;
+		if (length > pending.remaining()) {
+			flush();
+		}
+		
+		long offset = dataSize;
+		ByteBuffer record = (length > pending.capacity() ? ByteBuffer.allocate(length) : pending);
+		record.put(kind).putLong(0L).putInt(key.length).put(key).putInt(json.length).put(json);
+		if (record != pending) {
+			record.flip();
+			write(record, offset);
+		}
+		dataSize += length;
+		
+		return offset;
+	}
+	
+	
+	private void writeLong(long offset, long value) throws IOException {
+		if (offset >= flushed) {
+			pending.putLong((int) (offset - flushed), value);
+		} else {
+			ByteBuffer buffer = ByteBuffer.allocate(8);
+			buffer.putLong(value).flip();
+			write(buffer, offset);
+		}
+	}
+	
+	
+	private void flush() throws IOException {
+		pending.flip();
+		write(pending, flushed);
+		pending.clear();
+	}
+	
+	
+	private void write(ByteBuffer buffer, long offset) throws IOException {
+		int start = buffer.position();
+		while (buffer.hasRemaining()) {
+			data.write(buffer, offset + buffer.position() - start);
+		}
+		flushed = Math.max(flushed, offset + buffer.limit() - start);
+	}
+	
+	
+	// offset of the first record of the key, -1 when it is not spilled.
+	private long find(String jiraKey) throws IOException {
+		int hash = hash(jiraKey);
+		int slot = hash & (slots - 1);
+		long offset;
+		while ((offset = table.getLong(slot * SLOT_BYTES + 4)) != 0) {
+			if (table.getInt(slot * SLOT_BYTES) == hash && jiraKey.equals(readKey(offset - 1))) {
+				return offset - 1;
+			}
+			slot = (slot + 1) & (slots - 1);
+		}
+		
+		return -1;
+	}
+	
+	
+	private int hash(String jiraKey) {
+		int h = jiraKey.hashCode();
+		return h ^ (h >>> 16);
+	}
+	
+	
+	private String readKey(long offset) throws IOException {
+		ByteBuffer header = read(offset, RECORD_HEADER);
+		return new String(read(offset + RECORD_HEADER, header.getInt(9)).array(), StandardCharsets.UTF_8);
+	}
+	
+	
+	private Ticket readTicket(long first) throws IOException {
+		ByteBuffer header = read(first, RECORD_HEADER);
+		long offset = (header.getLong(1) != 0 ? header.getLong(1) : first);
+		if (offset != first) {
+			header = read(offset, RECORD_HEADER);
+		}
+		
+		long jsonOffset = offset + RECORD_HEADER + header.getInt(9);
+		return JsonMapper.get().readValue(read(jsonOffset + 4, read(jsonOffset, 4).getInt(0)).array(), Ticket.class);
+	}
+	
+	
+	private ByteBuffer read(long offset, int length) throws IOException {
+		if (offset + length > flushed) {
+			flush();
+		}
+		
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			if (data.read(buffer, offset + buffer.position()) < 0) {
+				throw new IOException("Truncated ticket index '" + dataFile + "'.");
+			}
+		}
+		
+		return buffer;
+	}
+	
+	
+	// scans the records in file order through a read buffer, yielding the current ticket of each first record.
+	private class EntryIterator implements Iterator<Map.Entry<String, Ticket>> {
+		private Iterator<Map.Entry<String, Ticket>> heapEntries = heap.entrySet().iterator();
+		private ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER);
+		private long bufferOffset;
+		private Map.Entry<String, Ticket> next;
+		
+		private EntryIterator() {
+			buffer.limit(0);
+		}
+		
+		@Override
+		public boolean hasNext() {
+			if (next == null) {
+				next = advance();
+			}
+			return next != null;
+		}
+		
+		@Override
+		public Map.Entry<String, Ticket> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			Map.Entry<String, Ticket> entry = next;
+			next = null;
+			return entry;
+		}
+		
+		private Map.Entry<String, Ticket> advance() {
+			if (heapEntries.hasNext()) {
+				return heapEntries.next();
+			}
+			
+			synchronized (TicketIndex.this) {
+				try {
+					while (data != null && bufferOffset + buffer.position() < dataSize) {
+						long offset = bufferOffset + buffer.position();
+						ByteBuffer header = fill(offset, RECORD_HEADER);
+						byte kind = header.get();
+						long replacement = header.getLong();
+						byte[] key = new byte[header.getInt()];
+						fill(offset + RECORD_HEADER, key.length).get(key);
+						byte[] json = new byte[fill(offset + RECORD_HEADER + key.length, 4).getInt()];
+						fill(offset + RECORD_HEADER + key.length + 4, json.length).get(json);
+						
+						if (kind == FIRST) {
+							String jiraKey = new String(key, StandardCharsets.UTF_8);
+							Ticket ticket = (replacement != 0 ? readTicket(offset) : JsonMapper.get().readValue(json, Ticket.class));
+							return new AbstractMap.SimpleImmutableEntry<>(jiraKey, ticket);
+						}
+					}
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+			
+			return null;
+		}
+		
+		// the buffer positioned at offset with at least length bytes, reading the file when needed.
+		private ByteBuffer fill(long offset, int length) throws IOException {
+			if (offset + length > bufferOffset + buffer.limit()) {
+				if (offset + length > flushed) {
+					flush();
+				}
+				if (length > buffer.capacity()) {
+					buffer = ByteBuffer.allocate(length);
+				}
+				buffer.clear();
+				bufferOffset = offset;
+				while (buffer.position() < length && data.read(buffer, bufferOffset + buffer.position()) > 0) {
+				}
+				buffer.flip();
+				if (buffer.limit() < length) {
+					throw new IOException("Truncated ticket index '" + dataFile + "'.");
+				}
+			}
+			buffer.position((int) (offset - bufferOffset));
+			return buffer;
+		}
+	}
+}
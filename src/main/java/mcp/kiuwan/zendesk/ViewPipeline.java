@@ -0,0 +1,233 @@
+// MIT License
+//
+// Copyright (c) 2019 Marcos Cacabelos Prol
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+
+package mcp.kiuwan.zendesk;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import mcp.kiuwan.jira.beans.Issue;
+import mcp.kiuwan.zendesk.beans.Ticket;
+import mcp.kiuwan.zendesk.beans.TicketPage;
+
+// view pages -> jira keys -> jira issues -> sink, each stage in its own thread(s) with bounded queues between them,
+// so pages are downloaded while issues of the previous ones are fetched and written.
+public class ViewPipeline {
+	private final static List<Ticket> END_OF_PAGES = Collections.emptyList();
+	private final static Link END_OF_LINKS = new Link(null, null);
+	private final static long POLL_MILLIS = 100;
+	
+	@FunctionalInterface
+	public interface Sink {
+		void accept(Ticket ticket, String jiraKey, Issue issue);
+	}
+	
+	private ZendeskClient zdClient;
+	private Function<String, Issue> issueFetcher;
+	private int jiraThreads;
+	private int queueSize;
+	
+	public ViewPipeline(ZendeskClient zdClient, Function<String, Issue> issueFetcher, int jiraThreads, int queueSize) {
+		this.zdClient = zdClient;
+		this.issueFetcher = issueFetcher;
+		this.jiraThreads = Math.max(1, jiraThreads);
+		this.queueSize = Math.max(1, queueSize);
+	}
+	
+	
+	// the sink is called from the calling thread. returns the jira key -> ticket index of the view. the first error
+	// of any stage (or of the sink) stops all of them: blocked puts and takes give up once it is recorded.
+	public Map<String, Ticket> run(String viewId, Sink sink) throws ZendeskException {
+		BlockingQueue<List<Ticket>> pages = new ArrayBlockingQueue<>(2);
+		BlockingQueue<Link> keys = new ArrayBlockingQueue<>(queueSize);
+		BlockingQueue<Link> issues = new ArrayBlockingQueue<>(queueSize);
+		Map<String, Ticket> ticketsWithIssue = zdClient.newTicketIndex();
+		AtomicReference<Exception> error = new AtomicReference<>();
+		
+		List<Thread> threads = new ArrayList<>();
+		
+		threads.add(start("pipeline-pages", error, () -> {
+			try {
+				for (TicketPage page = zdClient.getTicketPage(viewId, null); page != null; page = (page.getNext_page() != null ? zdClient.getTicketPage(viewId, page.getNext_page()) : null)) {
+					if (page.getTickets() != null) {
+						put(pages, page.getTickets(), error);
+					}
+				}
+			} catch (ZendeskException e) {
+				error.compareAndSet(null, e);
+				return;
+			}
+			put(pages, END_OF_PAGES, error);
+		}));
+		
+		threads.add(start("pipeline-keys", error, () -> {
+			Set<String> seen = new HashSet<>();
+			for (List<Ticket> page = take(pages, error); page != END_OF_PAGES; page = take(pages, error)) {
+				for (Ticket ticket : page) {
+					for (String jiraKey : zdClient.getJiraKeys(ticket)) {
+						synchronized (ticketsWithIssue) {
+							ticketsWithIssue.put(jiraKey, ticket);
+						}
+						if (seen.add(jiraKey)) {
+							put(keys, new Link(ticket, jiraKey), error);
+						}
+					}
+				}
+			}
+			for (int i = 0; i < jiraThreads; i++) {
+				put(keys, END_OF_LINKS, error);
+			}
+		}));
+		
+		for (int i = 0; i < jiraThreads; i++) {
+			threads.add(start("pipeline-jira-" + (i + 1), error, () -> {
+				for (Link link = take(keys, error); link != END_OF_LINKS; link = take(keys, error)) {
+					link.issue = issueFetcher.apply(link.jiraKey);
+					put(issues, link, error);
+				}
+				put(issues, END_OF_LINKS, error);
+			}));
+		}
+		
+		try {
+			int running = jiraThreads;
+			while (running > 0) {
+				Link link = take(issues, error);
+				if (link == END_OF_LINKS) {
+					running--;
+				} else {
+					sink.accept(link.ticket, link.jiraKey, link.issue);
+				}
+			}
+		} catch (CancellationException e) {
+			// a stage failed, its error is thrown below.
+		} catch (RuntimeException e) {
+			error.compareAndSet(null, e);
+		}
+		
+		threads.forEach(ViewPipeline::join);
+		if (error.get() != null) {
+			close(ticketsWithIssue);
+			if (error.get() instanceof ZendeskException) {
+				throw (ZendeskException) error.get();
+			}
+			throw (RuntimeException) error.get();
+		}
+		
+		synchronized (ticketsWithIssue) {
+			return ticketsWithIssue;
+		}
+	}
+	
+	
+	// a stage records its first error and ends; the others are cancelled by put and take.
+	private static Thread start(String name, AtomicReference<Exception> error, Runnable runnable) {
+		Thread thread = new Thread(() -> {
+			try {
+				runnable.run();
+			} catch (CancellationException e) {
+				// another stage failed.
+			} catch (RuntimeException e) {
+				error.compareAndSet(null, e);
+			}
+		}, name);
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+	
+	
+	private static void join(Thread thread) {
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	
+	// spill files of a partial index.
+	private static void close(Map<String, Ticket> ticketsWithIssue) {
+		if (ticketsWithIssue instanceof Closeable) {
+			try {
+				((Closeable) ticketsWithIssue).close();
+			} catch (IOException e) {
+				// the files are also deleted on exit.
+			}
+		}
+	}
+	
+	
+	private static <T> void put(BlockingQueue<T> queue, T element, AtomicReference<Exception> error) {
+		try {
+			while (!queue.offer(element, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+				if (error.get() != null) {
+					throw new CancellationException();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	
+	private static <T> T take(BlockingQueue<T> queue, AtomicReference<Exception> error) {
+		try {
+			T element;
+			while ((element = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+				if (error.get() != null) {
+					throw new CancellationException();
+				}
+			}
+			return element;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	
+	private static class Link {
+		private Ticket ticket;
+		private String jiraKey;
+		private Issue issue;
+		
+		private Link(Ticket ticket, String jiraKey) {
+			this.ticket = ticket;
+			this.jiraKey = jiraKey;
+		}
+	}
+}
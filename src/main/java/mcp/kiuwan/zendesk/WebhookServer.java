@@ -0,0 +1,262 @@
+// MIT License
+//
+// Copyright (c) 2019 Marcos Cacabelos Prol
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+
+package mcp.kiuwan.zendesk;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import mcp.kiuwan.http.JsonMapper;
+import mcp.kiuwan.jira.beans.Issue;
+import mcp.kiuwan.jira.beans.WebhookEvent;
+import mcp.kiuwan.zendesk.beans.Ticket;
+
+// receives jira 'issue updated' webhooks and releases the zendesk tickets linked to the issue when its status
+// changes to one of the release statuses. the jira key -> tickets index is loaded from the view and refreshed in
+// background, releases run in a bounded pool (503 when it is full).
+public class WebhookServer {
+	private static Logger logger = LoggerFactory.getLogger(WebhookServer.class);
+
+	private int port;
+	private String path;
+	private String secret;
+	private Set<String> releaseStatuses;
+	private Long substatusFieldId;
+	
+	private IndexLoader indexLoader;
+	private BiPredicate<Ticket, Issue> releaser;
+	private Function<String, Issue> issueFetcher;
+	
+	private volatile JiraKeyIndex index;
+	private JiraKeyIndex retired;
+	// tickets being released, and those released (nanoTime) since the index was loaded: the index still has them
+	// without the released substatus until the next refresh.
+	private Set<Long> inFlight = ConcurrentHashMap.newKeySet();
+	private Map<Long, Long> released = new ConcurrentHashMap<>();
+	
+	private HttpServer server;
+	private ThreadPoolExecutor workers;
+	private ScheduledExecutorService refresher;
+	
+	@FunctionalInterface
+	public interface IndexLoader {
+		JiraKeyIndex load() throws Exception;
+	}
+	
+	public WebhookServer(int port, String path, String secret, Set<String> releaseStatuses, Long substatusFieldId, IndexLoader indexLoader, Function<String, Issue> issueFetcher, BiPredicate<Ticket, Issue> releaser) {
+		this.port = port;
+		this.substatusFieldId = substatusFieldId;
+		this.path = path;
+		this.secret = (secret != null && !secret.trim().isEmpty() ? secret.trim() : null);
+		this.releaseStatuses = releaseStatuses;
+		this.indexLoader = indexLoader;
+		this.issueFetcher = issueFetcher;
+		this.releaser = releaser;
+	}
+	
+	
+	public void start(int threads, int queueSize, long refreshSeconds) throws IOException {
+		refreshIndex();
+		
+		refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "webhook-index");
+			thread.setDaemon(true);
+			return thread;
+		});
+		refresher.scheduleWithFixedDelay(this::refreshIndex, refreshSeconds, refreshSeconds, TimeUnit.SECONDS);
+		
+		workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize));
+		
+		server = HttpServer.create(new InetSocketAddress(port), 0);
+		server.createContext(path, this::handle);
+		server.setExecutor(Executors.newFixedThreadPool(2));
+		server.start();
+		logger.info("Webhook listening on port '{}', path '{}', '{}' indexed jira keys.", port, path, (index != null ? index.size() : 0));
+	}
+	
+	
+	public void stop() {
+		server.stop(0);
+		refresher.shutdownNow();
+		workers.shutdown();
+	}
+	
+	
+	private void refreshIndex() {
+		try {
+			long loadStart = System.nanoTime();
+			JiraKeyIndex loaded = indexLoader.load();
+			// spill files of the index replaced by the previous refresh: the last one may still be read by handlers.
+			if (retired != null) {
+				retired.close();
+			}
+			retired = index;
+			index = loaded;
+			released.values().removeIf(releasedAt -> releasedAt - loadStart < 0);
+			logger.debug("Webhook index: '{}' jira keys.", index.size());
+		} catch (Exception e) {
+			logger.error("Webhook index not refreshed: {}", e.getMessage());
+			logger.debug("[EXCEPTION]: ", e);
+		}
+	}
+	
+	
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+				respond(exchange, 405, "POST only.");
+				return;
+			}
+			if (secret != null && !isSecret(getQueryParameter(exchange.getRequestURI(), "secret"))) {
+				respond(exchange, 403, "Forbidden.");
+				return;
+			}
+			
+			WebhookEvent event;
+			try (InputStream body = exchange.getRequestBody()) {
+				event = JsonMapper.get().readValue(body, WebhookEvent.class);
+			} catch (IOException e) {
+				respond(exchange, 400, "Invalid payload: " + e.getMessage());
+				return;
+			}
+			
+			respond(exchange, accept(event), "");
+		} finally {
+			exchange.close();
+		}
+	}
+	
+	
+	// http status of the answer.
+	private int accept(WebhookEvent event) {
+		String newStatus = event.getNewStatus();
+		if (event.getIssue() == null || event.getIssue().getKey() == null || newStatus == null || !releaseStatuses.contains(newStatus.toLowerCase())) {
+			return 204;
+		}
+		
+		String jiraKey = event.getIssue().getKey();
+		JiraKeyIndex current = index;
+		List<Ticket> tickets = new ArrayList<>();
+		for (Ticket ticket : (current != null ? current.get(jiraKey) : Collections.<Ticket>emptyList())) {
+			if (ticket != null && !ticket.isReleased(substatusFieldId) && !released.containsKey(ticket.getId()) && inFlight.add(ticket.getId())) {
+				tickets.add(ticket);
+			}
+		}
+		if (tickets.isEmpty()) {
+			logger.debug("Webhook: '{}' to '{}', no ticket to release.", jiraKey, newStatus);
+			return 204;
+		}
+		
+		try {
+			workers.execute(() -> {
+				try {
+					Issue issue = (event.getIssue().getFields() != null && event.getIssue().getFields().getStatus() != null ? event.getIssue() : issueFetcher.apply(jiraKey));
+					for (Ticket ticket : tickets) {
+						if (issue != null && releaser.test(ticket, issue)) {
+							released.put(ticket.getId(), System.nanoTime());
+						}
+					}
+				} finally {
+					// a failed release is allowed again on a later event (or retry).
+					tickets.forEach(ticket -> inFlight.remove(ticket.getId()));
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			tickets.forEach(ticket -> inFlight.remove(ticket.getId()));
+			logger.warn("Webhook: '{}' rejected, release queue is full.", jiraKey);
+			return 503;
+		}
+		
+		logger.info("Webhook: '{}' to '{}', releasing tickets {}.", jiraKey, newStatus, tickets.stream().map(Ticket::getId).collect(Collectors.toList()));
+		return 202;
+	}
+	
+	
+	private void respond(HttpExchange exchange, int status, String message) throws IOException {
+		byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length == 0 || status == 204) {
+			exchange.sendResponseHeaders(status, -1);
+			return;
+		}
+		
+		exchange.getResponseHeaders().add("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+	
+	
+	// constant time: the answer does not tell how much of the secret matched.
+	private boolean isSecret(String value) {
+		return value != null && MessageDigest.isEqual(secret.getBytes(StandardCharsets.UTF_8), value.getBytes(StandardCharsets.UTF_8));
+	}
+	
+	
+	private String getQueryParameter(URI uri, String name) {
+		String query = uri.getRawQuery();
+		if (query == null) {
+			return null;
+		}
+		
+		for (String parameter : query.split("&")) {
+			int eq = parameter.indexOf('=');
+			if (eq > 0 && parameter.substring(0, eq).equals(name)) {
+				try {
+					return URLDecoder.decode(parameter.substring(eq + 1), "UTF-8");
+				} catch (UnsupportedEncodingException e) {
+					return null;
+				}
+			}
+		}
+		
+		return null;
+	}
+}
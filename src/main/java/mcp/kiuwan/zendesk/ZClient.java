@@ -22,18 +22,41 @@
 
 package mcp.kiuwan.zendesk;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.time.LocalTime;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import mcp.kiuwan.http.ConcurrencyLimiter;
+import mcp.kiuwan.http.Deadline;
+import mcp.kiuwan.http.HttpCache;
+import mcp.kiuwan.http.HttpTransport;
+import mcp.kiuwan.http.RequestHedger;
+import mcp.kiuwan.http.Tracer;
 import mcp.kiuwan.jira.JiraClient;
 import mcp.kiuwan.jira.JiraException;
 import mcp.kiuwan.jira.beans.Issue;
-import mcp.kiuwan.jira.beans.Status;
 import mcp.kiuwan.jira.beans.Transition;
 import mcp.kiuwan.zendesk.beans.Ticket;
 
@@ -48,25 +71,103 @@ public class ZClient {
 	private Properties config;
 	private ZendeskClient zdClient;
 	private JiraClient jiraClient;
+	private ReportWriter reportWriter;
+	private RequestHedger jiraHedger;
+	private RequestHedger zdHedger;
+	private ConcurrencyLimiter jiraLimiter;
+	private ConcurrencyLimiter zdLimiter;
+	private Tracer tracer;
+	private HttpCache httpCache;
+	
+	// successfully released tickets, with their issues, for --verify.
+	private Map<Long, List<Issue>> releasedIssues = new ConcurrentHashMap<>();
+	private Map<Long, Ticket> releasedTickets = new ConcurrentHashMap<>();
+	private Set<String> releasedKeys = ConcurrentHashMap.newKeySet();
+	private Set<String> skippedKeys = ConcurrentHashMap.newKeySet();
+	private Set<String> failedItems = ConcurrentHashMap.newKeySet();
+	private Deadline deadline = Deadline.none();
+	private ShardCoordinator shardCoordinator;
+	private SnapshotWriter snapshotWriter;
+	private SnapshotReader snapshot;
 
 	
 	public static void main(String[] args) throws Exception {
 		logger.info("Running {} ...", ZClient.class.getName());
 		
-		ZClient zclient = new ZClient();	
-		
 		String option = (args.length>0 ? args[0] : null);
-				
-		if ("--release".equalsIgnoreCase(option)) {
-			zclient.release();		
-		} else if ("--showtickets".equalsIgnoreCase(option)) {
-			zclient.getTicketsWithIssueFromView(zclient.getProperty("zendesk.view"));
-		} else if ("--showissues".equalsIgnoreCase(option)) {
-			zclient.getJiraIssues(Arrays.asList(zclient.getProperty("release.jira.issues").trim().split("[\\s]+")));
-		} else if ("--showreleasedtickets".equalsIgnoreCase(option)) {
-			zclient.showReleasedTickets();
-		} else {
+		String format = getArgument(args, "--format");
+		String out = getArgument(args, "--out");
+		String trace = getArgument(args, "--trace");
+		String worker = getArgument(args, "--worker");
+		String snapshotOut = getArgument(args, "--snapshot-out");
+		String snapshotIn = getArgument(args, "--snapshot-in");
+		
+		ReportWriter.Format reportFormat;
+		try {
+			reportFormat = ReportWriter.parseFormat(format != null ? format : "ndjson");
+		} catch (IllegalArgumentException e) {
+			logger.error("Invalid --format '{}', ndjson or csv.", format);
 			help();
+			return;
+		}
+		
+		ZClient zclient = new ZClient(trace != null ? new Tracer(new File(trace)) : Tracer.disabled(), "--webhook".equalsIgnoreCase(option));	
+		zclient.createShardCoordinator(worker);
+		
+		boolean planOnly = hasArgument(args, "--plan");
+		if (snapshotIn != null) {
+			if (("--release".equalsIgnoreCase(option) && !planOnly) || "--webhook".equalsIgnoreCase(option)) {
+				logger.error("--snapshot-in is only for show commands and --release --plan, '{}' needs the servers.", option);
+				return;
+			}
+			zclient.openSnapshot(Paths.get(snapshotIn));
+		} else {
+			try {
+				zclient.resolveZendeskFields();
+			} catch (ZendeskException e) {
+				logger.error(e.getMessage());
+				logger.debug("[EXCEPTION]: ", e);
+				return;
+			}
+		}
+		if (snapshotOut != null) {
+			zclient.snapshotWriter = new SnapshotWriter(Paths.get(snapshotOut), zclient.zdClient.getJiraFieldId(), zclient.zdClient.getSubstatusFieldId());
+		}
+		
+		if (out != null) {
+			zclient.reportWriter = new ReportWriter(reportFormat, Paths.get(out), zclient.zdClient.getSubstatusFieldId());
+		}
+				
+		try {
+			if ("--release".equalsIgnoreCase(option)) {
+				zclient.release(planOnly);		
+				if (!planOnly && hasArgument(args, "--verify")) {
+					zclient.verify();
+				}
+			} else if ("--showtickets".equalsIgnoreCase(option)) {
+				zclient.getTicketsWithIssueFromView(zclient.getProperty("zendesk.view"));
+			} else if ("--showissues".equalsIgnoreCase(option)) {
+				zclient.getJiraIssues(Arrays.asList(zclient.getProperty("release.jira.issues").trim().split("[\\s]+")));
+			} else if ("--showreleasedtickets".equalsIgnoreCase(option)) {
+				zclient.showReleasedTickets();
+			} else if ("--webhook".equalsIgnoreCase(option)) {
+				zclient.serveWebhook();
+			} else {
+				help();
+			}
+		} finally {
+			zclient.logMetrics();
+			zclient.tracer.write();
+			if (zclient.reportWriter != null) {
+				zclient.reportWriter.close();
+				logger.info("Written '{}' records to '{}'.", zclient.reportWriter.getCount(), out);
+			}
+			if (zclient.snapshotWriter != null) {
+				zclient.writeSnapshot(snapshotOut);
+			}
+			if (zclient.snapshot != null) {
+				zclient.snapshot.close();
+			}
 		}
 
 		logger.info("... end.");
@@ -75,20 +176,168 @@ public class ZClient {
 
 	private static void help() {
 		System.out.println("Options:");
-		System.out.println("   --release");
+		System.out.println("   --release [--verify] (verify re-reads released tickets and releases again the mismatches)");
+		System.out.println("   --release --plan (prints the calls the release would make and their estimated time, without writing)");
 		System.out.println("   --showtickets (configured in zendesk.view property)");
 		System.out.println("   --showissues (configured in release.jira.issues)");		
 		System.out.println("   --showreleasedtickets (configured in zendesk.view property and release.jira.issues)");		
+		System.out.println("   --webhook (receives jira webhooks and releases the linked tickets, configured in webhook.* properties)");		
+		System.out.println("   [--format ndjson|csv --out <file>] (show commands, one record per ticket/issue)");		
+		System.out.println("   [--worker <id>] (release shared by workers, configured in release.shard.dir)");		
+		System.out.println("   [--trace <file>] (chrome trace-event json of http calls and phases)");		
+		System.out.println("   [--snapshot-out <file>] (saves the fetched tickets and issues)");		
+		System.out.println("   [--snapshot-in <file>] (show commands and --release --plan from a saved snapshot, without network calls)");		
+	}
+	
+	
+	private static boolean hasArgument(String[] args, String name) {
+		return Arrays.stream(args).skip(1).anyMatch(name::equalsIgnoreCase);
+	}
+	
+	
+	private static String getArgument(String[] args, String name) {
+		for (int i = 1; i < args.length - 1; i++) {
+			if (name.equalsIgnoreCase(args[i])) {
+				return args[i + 1];
+			}
+		}
+		
+		return null;
 	}
 
 
-	private ZClient() throws Exception {
+	private ZClient(Tracer tracer, boolean server) throws Exception {
+		this.tracer = tracer;
 		config = loadConfiguration();
-		jiraClient = new JiraClient(config.getProperty("jira.url"), config.getProperty("jira.user"), config.getProperty("jira.password"));
-		zdClient = new ZendeskClient(config.getProperty("zendesk.domain"), config.getProperty("zendesk.username"), config.getProperty("zendesk.token"));
+		String transport = config.getProperty("http.transport", "jersey");
+		jiraClient = new JiraClient(config.getProperty("jira.url"), HttpTransport.create(transport, config.getProperty("jira.user"), config.getProperty("jira.password")));
+		zdClient = new ZendeskClient(config.getProperty("zendesk.domain"), HttpTransport.create(transport, config.getProperty("zendesk.username") + "/token", config.getProperty("zendesk.token")));
+		zdClient.setBaseUrl(config.getProperty("zendesk.url"));
+		String indexDir = config.getProperty("index.spill.dir", "").trim();
+		zdClient.setIndexBudget(Long.parseLong(config.getProperty("index.heap.budget", "0")), indexDir.isEmpty() ? null : new File(indexDir));
+		
+		jiraHedger = createHedger("jira");
+		jiraClient.setHedger(jiraHedger);
+		zdHedger = createHedger("zendesk");
+		zdClient.setHedger(zdHedger);
+		
+		jiraLimiter = createLimiter("jira");
+		jiraClient.setLimiter(jiraLimiter);
+		zdLimiter = createLimiter("zendesk");
+		zdClient.setLimiter(zdLimiter);
+		
+		jiraClient.setTracer(tracer);
+		zdClient.setTracer(tracer);
+		
+		jiraClient.setTimeouts(Integer.parseInt(config.getProperty("jira.timeout.connect", "0")), Integer.parseInt(config.getProperty("jira.timeout.read", "0")));
+		zdClient.setTimeouts(Integer.parseInt(config.getProperty("zendesk.timeout.connect", "0")), Integer.parseInt(config.getProperty("zendesk.timeout.read", "0")));
+		
+		// the run deadline does not apply to the long running webhook receiver.
+		if (!server) {
+			deadline = Deadline.in(Long.parseLong(config.getProperty("run.deadline", "0")), TimeUnit.SECONDS);
+			jiraClient.setDeadline(deadline);
+			zdClient.setDeadline(deadline);
+		}
+		
+		if (Boolean.parseBoolean(config.getProperty("http.cache.enabled", "false"))) {
+			httpCache = new HttpCache(new File(config.getProperty("http.cache.dir", "http-cache")), Long.parseLong(config.getProperty("http.cache.maxsize", "104857600")));
+			jiraClient.setHttpCache(httpCache);
+			zdClient.setHttpCache(httpCache);
+		}
+	}
+	
+	
+	private void createShardCoordinator(String workerId) {
+		String shardDir = config.getProperty("release.shard.dir", "").trim();
+		if (shardDir.isEmpty()) {
+			return;
+		}
+		
+		int shards = Integer.parseInt(config.getProperty("release.shards", "16"));
+		shardCoordinator = new ShardCoordinator(new File(shardDir), shards, workerId != null ? workerId : ManagementFactory.getRuntimeMXBean().getName());
+	}
+	
+	
+	private ConcurrencyLimiter createLimiter(String prefix) {
+		if (!Boolean.parseBoolean(config.getProperty(prefix + ".limit.enabled", "false"))) {
+			return null;
+		}
+		
+		int initial = Integer.parseInt(config.getProperty(prefix + ".limit.initial", "4"));
+		int max = Integer.parseInt(config.getProperty(prefix + ".limit.max", "32"));
+		double tolerance = Double.parseDouble(config.getProperty(prefix + ".limit.tolerance", "2.0"));
+		return new ConcurrencyLimiter(prefix, initial, max, tolerance);
+	}
+	
+	
+	private RequestHedger createHedger(String prefix) {
+		if (!Boolean.parseBoolean(config.getProperty(prefix + ".hedge.enabled", "false"))) {
+			return null;
+		}
+		
+		double percentile = Double.parseDouble(config.getProperty(prefix + ".hedge.percentile", "95"));
+		double budget = Double.parseDouble(config.getProperty(prefix + ".hedge.budget", "0.05"));
+		return new RequestHedger(prefix, percentile, budget);
 	}
 	
 	
+	private void logMetrics() {
+		if (jiraHedger != null) {
+			logger.info("{}", jiraHedger);
+		}
+		if (zdHedger != null) {
+			logger.info("{}", zdHedger);
+		}
+		if (jiraLimiter != null) {
+			logger.info("{}", jiraLimiter);
+		}
+		if (zdLimiter != null) {
+			logger.info("{}", zdLimiter);
+		}
+		if (httpCache != null) {
+			logger.info("{}", httpCache);
+		}
+	}
+	
+	
+	// a configured field that does not resolve stops the run: the defaults are the ids of another instance.
+	private void resolveZendeskFields() throws ZendeskException {
+		File cacheFile = new File(config.getProperty("zendesk.fields.cache", "zendesk-fields.cache"));
+		long ttl = Long.parseLong(config.getProperty("zendesk.fields.cache.ttl", "86400"));
+		ZendeskFieldCache fieldCache = new ZendeskFieldCache(zdClient, cacheFile, ttl);
+		
+		try (Tracer.Span span = tracer.span("field resolve", "zclient")) {
+			Long jiraFieldId = fieldCache.resolve(config.getProperty("zendesk.field.jira"));
+			Long substatusFieldId = fieldCache.resolve(config.getProperty("zendesk.field.substatus"));
+			logger.debug("Zendesk fields: jira '{}', substatus '{}'.", jiraFieldId, substatusFieldId);
+			zdClient.setFieldIds(jiraFieldId, substatusFieldId);
+		}
+	}
+	
+	
+	private void openSnapshot(Path path) throws IOException {
+		snapshot = new SnapshotReader(path);
+		zdClient.setFieldIds(snapshot.getJiraFieldId(), snapshot.getSubstatusFieldId());
+		logger.info("Snapshot '{}' of view '{}', taken at '{}'.", path, snapshot.getViewId(), new Date(snapshot.getCreated()));
+		
+		String viewId = config.getProperty("zendesk.view");
+		if (!snapshot.getViewId().isEmpty() && !snapshot.getViewId().equals(viewId)) {
+			logger.warn("Snapshot taken from view '{}', zendesk.view is '{}'.", snapshot.getViewId(), viewId);
+		}
+	}
+	
+	
+	private void writeSnapshot(String path) {
+		try {
+			snapshotWriter.write();
+			logger.info("Snapshot of '{}' tickets and '{}' issues written to '{}'.", snapshotWriter.getTicketCount(), snapshotWriter.getIssueCount(), path);
+		} catch (IOException e) {
+			logger.error(e.getMessage());
+			logger.debug("[EXCEPTION]: ", e);
+		}
+	}
+
+
 	private Properties loadConfiguration() throws Exception {
 		InputStream input = this.getClass().getClassLoader().getResourceAsStream(CONFIG_FILE);
     	if (input == null) {
@@ -102,65 +351,344 @@ public class ZClient {
 	}
 	
 	
-	private void release() throws Exception {
+	private void release(boolean planOnly) throws Exception {
+		try (Tracer.Span span = tracer.span("release", "zclient")) {
+			doRelease(planOnly);
+		} finally {
+			if (!planOnly) {
+				logReleaseReport();
+			}
+		}
+	}
+	
+	
+	private void logReleaseReport() {
+		logger.info("Release: '{}' tickets and '{}' jira issues released.", releasedTickets.size(), releasedKeys.size());
+		if (!skippedKeys.isEmpty()) {
+			logger.warn("Release: run deadline exceeded, '{}' jira issues not started: {}", skippedKeys.size(), String.join(" ", skippedKeys));
+		}
+	}
+	
+	
+	private void doRelease(boolean planOnly) throws Exception {
 		String viewId = config.getProperty("zendesk.view");
 		
-		List<String> jiraKeys = Arrays.asList(config.getProperty("release.jira.issues").trim().split("[\\s]+"));
-		Map<String, Ticket> ticketsWithIssue = getTicketsWithIssueFromView(viewId);		
-		Map<String, Issue> jiraIssues = getJiraIssues(jiraKeys);
+		// keys from the jql query (issues updated since the last run) or from the configured list.
+		String jql = config.getProperty("release.jira.jql", "").trim();
+		ReleaseWatermark watermark = (!jql.isEmpty() ? new ReleaseWatermark(new File(config.getProperty("release.jira.watermark", "release-watermark.properties"))) : null);
+		long searchStart = System.currentTimeMillis();
+		List<String> configuredKeys = (watermark == null ? Arrays.asList(config.getProperty("release.jira.issues").trim().split("[\\s]+")) : null);
+		Supplier<Map<String, Issue>> issueSource = (watermark != null ? () -> searchJiraIssues(jql, watermark) : () -> getJiraIssues(configuredKeys));
 		
-		jiraKeys.forEach(jiraKey -> {
-			if (ticketsWithIssue.containsKey(jiraKey)) {
-				releaseZendeskTicket(ticketsWithIssue.get(jiraKey), jiraIssues.get(jiraKey));
+		// both sides are independent: jira issues are fetched while the view is downloaded.
+		CompletableFuture<Map<String, Issue>> futureIssues = CompletableFuture.supplyAsync(issueSource);
+		Map<String, Ticket> ticketsWithIssue = fetchTicketsWithIssueFromView(viewId);
+		logger.debug("View '{}' has '{}' tickets.", viewId, ticketsWithIssue.entrySet().size());
+		Map<String, Issue> jiraIssues;
+		try {
+			jiraIssues = futureIssues.join();
+		} catch (CompletionException e) {
+			throw (e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+		}
+		List<String> jiraKeys = (watermark != null ? new ArrayList<>(jiraIssues.keySet()) : configuredKeys);
+		
+		// the executor sends exactly the writes of the plan.
+		ReleasePlan plan;
+		boolean skipReleasedTickets = Boolean.parseBoolean(config.getProperty("release.skip.released.tickets", "false"));
+		try (Tracer.Span span = tracer.span("release plan", "zclient")) {
+			plan = new ReleasePlan(jiraKeys, ticketsWithIssue, jiraIssues, config.getProperty("release.message"), config.getProperty("jira.transition.close", Transition.CLOSE), zdClient.getSubstatusFieldId(), skipReleasedTickets);
+		}
+		logPlan(plan);
+		if (planOnly) {
+			plan.print(System.out);
+			return;
+		}
+		
+		lookupTransitions(plan);
+		if (shardCoordinator != null) {
+			releaseShards(plan.getUnits());
+		} else {
+			releaseUnits(plan.getUnits(), Collections.emptySet(), null);
+		}
+		
+		if (watermark != null) {
+			// shards completed by other workers may have failed items too.
+			if (shardCoordinator != null) {
+				Set<String> failed = shardCoordinator.getFailed();
+				if (!failed.isEmpty()) {
+					logger.warn("Release: '{}' items failed in the shards of all the workers: {}", failed.size(), String.join(" ", failed));
+					failedItems.addAll(failed);
+				}
+			}
+			if (skippedKeys.isEmpty() && failedItems.isEmpty()) {
+				watermark.save(searchStart, jiraKeys);
+			} else {
+				logger.warn("Release: not all the jql issues were released, watermark not moved.");
+			}
+		}
+	}
+	
+	
+	// before the release threads, so that they find the transitions of each workflow step cached.
+	private void lookupTransitions(ReleasePlan plan) {
+		for (Issue issue : plan.getTransitionLookups()) {
+			try {
+				jiraClient.getTransitions(issue);
+			} catch (JiraException e) {
+				logger.error(e.getMessage());
+				logger.debug("[EXCEPTION]: ", e);
+			}
+		}
+	}
+	
+	
+	// calls and wall time under the current limits, with the mean latency of the calls of this run (or the configured
+	// one when there are none, e.g. from a snapshot).
+	private void logPlan(ReleasePlan plan) {
+		logger.info("{}", plan);
+		
+		double defaultLatency = Double.parseDouble(config.getProperty("release.plan.latency", "300"));
+		double jiraLatency = (jiraClient.getMeanLatency() > 0 ? jiraClient.getMeanLatency() : defaultLatency);
+		double zendeskLatency = (zdClient.getMeanLatency() > 0 ? zdClient.getMeanLatency() : defaultLatency);
+		int threads = Math.max(1, Integer.parseInt(config.getProperty("release.threads", "1")));
+		int jiraLimit = (jiraLimiter != null ? jiraLimiter.getLimit() : threads);
+		int zendeskLimit = (zdLimiter != null ? zdLimiter.getLimit() : threads);
+		
+		long millis = plan.estimateMillis(threads, jiraLimit, zendeskLimit, jiraLatency, zendeskLatency);
+		logger.info("Release plan: '{}' zendesk and '{}' jira calls ('{}' saved by merged writes), '{}' steps already done, estimated '{}' s with '{}' threads (jira '{}' ms/call, limit '{}'; zendesk '{}' ms/call, limit '{}').",
+			plan.getZendeskCalls(), plan.getJiraCalls(), plan.getMergedCalls(), plan.getDoneSteps(), String.format("%.1f", millis / 1000.0), threads,
+			Math.round(jiraLatency), jiraLimit, Math.round(zendeskLatency), zendeskLimit);
+	}
+	
+	
+	// a failed search aborts the release (rethrown by join). from a snapshot, the issues it has stand for the result.
+	private Map<String, Issue> searchJiraIssues(String jql, ReleaseWatermark watermark) {
+		String query = watermark.restrict(jql);
+		int pageSize = Integer.parseInt(config.getProperty("release.jira.jql.pagesize", "100"));
+		
+		Map<String, Issue> issues;
+		if (snapshot != null) {
+			try {
+				issues = new LinkedHashMap<>(snapshot.getIssues(snapshot.getIssueKeys()));
+			} catch (IOException e) {
+				throw new CompletionException(e);
+			}
+		} else {
+			try (Tracer.Span span = tracer.span("issue search", "zclient").arg("jql", query)) {
+				issues = jiraClient.searchIssues(query, pageSize);
+			} catch (JiraException e) {
+				throw new CompletionException(e);
+			}
+		}
+		logger.info("Jql '{}' found '{}' issues.", query, issues.size());
+		
+		List<String> again = issues.keySet().stream().filter(watermark::wasReleased).collect(Collectors.toList());
+		if (!again.isEmpty()) {
+			logger.info("Skipped '{}' issues released by the last run: {}", again.size(), String.join(" ", again));
+			issues.keySet().removeAll(again);
+		}
+		if (snapshotWriter != null) {
+			issues.forEach(snapshotWriter::addIssue);
+		}
+		
+		return issues;
+	}
+	
+	
+	// leases shards until all are done (by this or other workers), releasing the units of each one. when the deadline
+	// expires, the keys of the shards neither done nor leased by this worker are skipped.
+	private void releaseShards(List<ReleasePlan.Unit> units) throws Exception {
+		shardCoordinator.begin(config.getProperty("release.message"), units.stream().map(ReleasePlan.Unit::getId).collect(Collectors.toList()));
+		Map<Integer, List<ReleasePlan.Unit>> unitsByShard = units.stream().collect(Collectors.groupingBy(u -> shardCoordinator.getShard(u.getId())));
+		Set<Integer> leased = new HashSet<>();
+		
+		ShardCoordinator.Shard shard;
+		while ((shard = shardCoordinator.claim(deadline)) != null) {
+			if (deadline.isExpired()) {
+				shard.close();
+				break;
+			}
+			leased.add(shard.getIndex());
+			
+			Set<String> released = shardCoordinator.getReleased(shard.getIndex());
+			releaseUnits(unitsByShard.getOrDefault(shard.getIndex(), Collections.emptyList()), released, shard.getIndex());
+			
+			if (deadline.isExpired()) {
+				shard.close();
+				break;
+			}
+			shardCoordinator.complete(shard);
+		}
+		
+		unitsByShard.forEach((index, shardUnits) -> {
+			if (!leased.contains(index) && !shardCoordinator.isDone(index)) {
+				shardUnits.forEach(u -> skippedKeys.addAll(u.getKeys()));
 			}
-			releaseJiraIssue(jiraKey, jiraIssues.get(jiraKey));
 		});
 	}
+	
+	
+	// items (ticket units and jira keys) in 'released' were already done by a previous lease of the shard.
+	private void releaseUnits(List<ReleasePlan.Unit> units, Set<String> released, Integer shard) throws InterruptedException {
+		int threads = Integer.parseInt(config.getProperty("release.threads", "1"));
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+		units.forEach(unit -> executor.execute(() -> {
+			if (deadline.isExpired()) {
+				skippedKeys.addAll(unit.getKeys());
+				return;
+			}
+			try (Tracer.Span span = tracer.span("release " + unit.getId(), "zclient").arg("keys", unit.getKeys())) {
+				if (unit.isTicketUpdate() && !released.contains(unit.getId())) {
+					journal(shard, unit.getId(), releaseZendeskTicket(unit.getTicket(), unit.getIssues()));
+				}
+				unit.getSteps().stream().filter(step -> !step.isDone() && !released.contains(step.getKey())).forEach(step -> {
+					journal(shard, step.getKey(), releaseJiraIssue(step));
+				});
+			}
+		}));
+		
+		executor.shutdown();
+		executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+	}
+	
+	
+	private void journal(Integer shard, String item, boolean released) {
+		if (!released) {
+			failedItems.add(item);
+		}
+		if (shard == null) {
+			return;
+		}
+		
+		try {
+			shardCoordinator.journal(shard, item, released ? ShardCoordinator.RELEASED : ShardCoordinator.FAILED);
+		} catch (IOException e) {
+			logger.error(e.getMessage());
+			logger.debug("[EXCEPTION]: ", e);
+		}
+	}
+
+
+	// re-reads released tickets with 'show_many' and releases again (once) those without 'released' substatus.
+	private void verify() throws ZendeskException {
+		try (Tracer.Span span = tracer.span("verify", "zclient")) {
+			List<Long> mismatches = getUnreleased(new ArrayList<>(releasedTickets.keySet()));
+			logger.info("Verify: '{}' of '{}' released tickets do not have substatus '{}'.", mismatches.size(), releasedTickets.size(), Ticket.RELEASED);
+			if (mismatches.isEmpty()) {
+				return;
+			}
+			
+			mismatches.forEach(id -> releaseZendeskTicket(releasedTickets.get(id), releasedIssues.get(id)));
+			
+			mismatches = getUnreleased(mismatches);
+			mismatches.forEach(id -> logger.error("Verify: ticket '{}' is not released.", id));
+		}
+	}
+	
+	
+	private List<Long> getUnreleased(List<Long> ids) throws ZendeskException {
+		Set<Long> released = zdClient.getTickets(ids).stream().filter(t -> t.isReleased(zdClient.getSubstatusFieldId())).map(Ticket::getId).collect(Collectors.toSet());
+		return ids.stream().filter(id -> !released.contains(id)).collect(Collectors.toList());
+	}
 
 
-	private void releaseJiraIssue(String jiraKey, Issue issue) {
+	private boolean releaseJiraIssue(ReleasePlan.IssueStep step) {
+		String jiraKey = step.getKey();
+		Issue issue = step.getIssue();
+		if (issue == null) {
+			logger.error("Jira.release: issue '{}' not found, skipped.", jiraKey);
+			return false;
+		}
+		
 		logger.info("Jira.release: '{}'", issue.toShortString());
-		try {
-			String comment = createReleaseComment(issue);
-			jiraClient.addIssueComment(issue, comment);
-			jiraClient.releaseIssue(issue, comment);
-			if (issue.getFields().getStatus().getId() == Status.RESOLVED) {
-				jiraClient.transitionIssue(issue, Transition.CLOSE);
+		try (Tracer.Span span = tracer.span("release " + jiraKey, "zclient")) {
+			if (step.isUpdate()) {
+				jiraClient.releaseIssueWithComment(issue, createReleaseComment(Collections.singletonList(issue)));
 			}
+			if (step.isTransition()) {
+				jiraClient.transitionIssue(issue, config.getProperty("jira.transition.close", Transition.CLOSE));
+			}
+			releasedKeys.add(jiraKey);
+			return true;
 		} catch (JiraException e) {
 			logger.error(e.getMessage());
 			logger.debug("[EXCEPTION]: ", e);
+			return false;
 		}
 	}
 
 
-	private void releaseZendeskTicket(Ticket ticket, Issue issue) {
-		logger.info("Zendesk.release: '{}'", ticket.toShortString());
+	private boolean releaseZendeskTicket(Ticket ticket, List<Issue> issues) {
+		logger.info("Zendesk.release: '{}'", ticket.toShortString(zdClient.getJiraFieldId(), zdClient.getSubstatusFieldId()));
 		try {
-			zdClient.releaseTicket(ticket, createReleaseComment(issue));
+			zdClient.releaseTicket(ticket, createReleaseComment(issues));
+			releasedTickets.put(ticket.getId(), ticket);
+			releasedIssues.put(ticket.getId(), issues);
+			return true;
 		} catch (ZendeskException e) {
 			logger.error(e.getMessage());
 			logger.debug("[EXCEPTION]: ", e);
+			return false;
 		}
 	}
 
 
-	private Map<String, Ticket> getTicketsWithIssueFromView(String viewId) throws Exception {		
-		Map<String, Ticket> ticketsWithIssue = zdClient.getTicketsWithIssueFromView(viewId);
-		logger.debug("View '{}' has '{}' tickets.", viewId, ticketsWithIssue.entrySet().size());
+	private void serveWebhook() throws Exception {
+		Set<String> releaseStatuses = Arrays.stream(config.getProperty("webhook.release.statuses", "Resolved").split(","))
+			.map(String::trim).filter(status -> !status.isEmpty()).map(String::toLowerCase).collect(Collectors.toSet());
+		String viewId = config.getProperty("zendesk.view");
 		
+		WebhookServer server = new WebhookServer(
+			Integer.parseInt(config.getProperty("webhook.port", "8085")),
+			config.getProperty("webhook.path", "/jira/webhook"),
+			config.getProperty("webhook.secret"),
+			releaseStatuses,
+			zdClient.getSubstatusFieldId(),
+			() -> zdClient.getJiraKeyIndexFromView(viewId),
+			this::fetchIssue,
+			(ticket, issue) -> releaseZendeskTicket(ticket, Collections.singletonList(issue)));
+		
+		server.start(
+			Integer.parseInt(config.getProperty("webhook.threads", "4")),
+			Integer.parseInt(config.getProperty("webhook.queue.size", "100")),
+			Long.parseLong(config.getProperty("webhook.index.refresh", "300")));
+		
+		Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+		Thread.currentThread().join();
+	}
+
+
+	private Map<String, Ticket> getTicketsWithIssueFromView(String viewId) throws Exception {		
 		StringBuffer sbTickets = new StringBuffer();
 		StringBuffer sbIssues = new StringBuffer();
 		
-		ticketsWithIssue.keySet().forEach(jiraKey -> {
-			Ticket ticket = ticketsWithIssue.get(jiraKey);
-			Issue issue = null;
-			try {
-				issue = jiraClient.getIssue(jiraKey);
-			} catch (JiraException e) {}
-						
-			addFilteredTickets(ticket, jiraKey, issue, sbTickets, sbIssues);
-		});
+		int jiraThreads = Integer.parseInt(config.getProperty("pipeline.jira.threads", "4"));
+		int queueSize = Integer.parseInt(config.getProperty("pipeline.queue.size", "100"));
+		ViewPipeline pipeline = new ViewPipeline(zdClient, this::fetchIssue, jiraThreads, queueSize);
+		
+		ViewPipeline.Sink sink = (ticket, jiraKey, issue) -> {
+			if (reportWriter != null) {
+				writeReport(ticket, jiraKey, issue);
+			} else {
+				addFilteredTickets(ticket, jiraKey, issue, sbTickets, sbIssues);
+			}
+		};
+		
+		Map<String, Ticket> ticketsWithIssue;
+		if (snapshot != null) {
+			ticketsWithIssue = snapshot.getTicketsWithIssue();
+			for (Map.Entry<String, Ticket> entry : ticketsWithIssue.entrySet()) {
+				sink.accept(entry.getValue(), entry.getKey(), fetchIssue(entry.getKey()));
+			}
+		} else {
+			try (Tracer.Span span = tracer.span("view pipeline " + viewId, "zclient")) {
+				ticketsWithIssue = pipeline.run(viewId, sink);
+			}
+			if (snapshotWriter != null) {
+				snapshotWriter.addTickets(viewId, ticketsWithIssue);
+			}
+		}
+		logger.debug("View '{}' has '{}' tickets.", viewId, ticketsWithIssue.entrySet().size());
 		
 		logger.debug("zendesk: {}", sbTickets.toString());
 		logger.debug("jira: {}", sbIssues.toString());
@@ -196,27 +724,98 @@ public class ZClient {
 		String viewId = config.getProperty("zendesk.view");
 		
 		List<String> jiraKeys = Arrays.asList(config.getProperty("release.jira.issues").trim().split("[\\s]+"));
-		Map<String, Ticket> ticketsWithIssue = zdClient.getTicketsWithIssueFromView(viewId);
+		Map<String, Ticket> ticketsWithIssue = fetchTicketsWithIssueFromView(viewId);
 		logger.debug("View '{}' has '{}' tickets.", viewId, ticketsWithIssue.entrySet().size());
 		
 		
 		jiraKeys.forEach(jiraKey -> {
 			if (ticketsWithIssue.containsKey(jiraKey)) {
 				Ticket ticket = ticketsWithIssue.get(jiraKey);
-				Issue issue = null;
-				try {
-					issue = jiraClient.getIssue(jiraKey);
-				} catch (JiraException e) {}
+				Issue issue = fetchIssue(jiraKey);
 
-				logger.info("   {}/{}: zd{} - jira{}", ticket.getId(), jiraKey, ticket.toShortString(), (issue!=null) ? issue.toShortString() : "{}");
+				if (reportWriter != null) {
+					writeReport(ticket, jiraKey, issue);
+				} else {
+					logger.info("   {}/{}: zd{} - jira{}", ticket.getId(), jiraKey, ticket.toShortString(zdClient.getJiraFieldId(), zdClient.getSubstatusFieldId()), (issue!=null) ? issue.toShortString() : "{}");
+				}
 			}
 		});
 	}
+	
+	
+	private Map<String, Ticket> fetchTicketsWithIssueFromView(String viewId) throws ZendeskException {
+		if (snapshot != null) {
+			try {
+				return snapshot.getTicketsWithIssue();
+			} catch (IOException e) {
+				throw new ZendeskException(e);
+			}
+		}
+		
+		Map<String, Ticket> ticketsWithIssue;
+		try (Tracer.Span span = tracer.span("view fetch " + viewId, "zclient")) {
+			ticketsWithIssue = zdClient.getTicketsWithIssueFromView(viewId);
+		}
+		if (snapshotWriter != null) {
+			snapshotWriter.addTickets(viewId, ticketsWithIssue);
+		}
+		
+		return ticketsWithIssue;
+	}
+	
+	
+	private Issue fetchIssue(String jiraKey) {
+		if (snapshot != null) {
+			try {
+				return snapshot.getIssue(jiraKey);
+			} catch (IOException e) {
+				logger.error(e.getMessage());
+				logger.debug("[EXCEPTION]: ", e);
+				return null;
+			}
+		}
+		
+		try (Tracer.Span span = tracer.span("issue fetch " + jiraKey, "zclient")) {
+			Issue issue = jiraClient.getIssue(jiraKey);
+			if (snapshotWriter != null) {
+				snapshotWriter.addIssue(jiraKey, issue);
+			}
+			return issue;
+		} catch (JiraException e) {
+			return null;
+		}
+	}
+	
+	
+	private void writeReport(Ticket ticket, String jiraKey, Issue issue) {
+		try {
+			reportWriter.write(ticket, jiraKey, issue);
+		} catch (IOException e) {
+			logger.error(e.getMessage());
+			logger.debug("[EXCEPTION]: ", e);
+		}
+	}
 
 
 	private Map<String, Issue> getJiraIssues(List<String> jiraKeys) {
 		HashSet<String> keys = new HashSet<String>(jiraKeys);
-		Map<String, Issue> issues = jiraClient.getIssues(keys);
+		Map<String, Issue> issues;
+		if (snapshot != null) {
+			try {
+				issues = snapshot.getIssues(keys);
+			} catch (IOException e) {
+				logger.error(e.getMessage());
+				logger.debug("[EXCEPTION]: ", e);
+				issues = Collections.emptyMap();
+			}
+		} else {
+			try (Tracer.Span span = tracer.span("issue fetch", "zclient").arg("keys", keys.size())) {
+				issues = jiraClient.getIssues(keys);
+			}
+			if (snapshotWriter != null) {
+				issues.forEach(snapshotWriter::addIssue);
+			}
+		}
 		logger.debug("Found '{}' issues of '{}' keys.", issues.size(), keys.size());
 		issues.values().forEach(t -> {
 			logger.debug("   {}", t.toString());
@@ -226,14 +825,16 @@ public class ZClient {
 	}
 	
 	
-	private String createReleaseComment(Issue issue) {
+	private String createReleaseComment(List<Issue> issues) {
 		final String NL = "\n";
 		
 		String comment = "### kbot begin. " + LocalDate.now().toString() + " " + LocalTime.now().toString() + NL;
 		comment += config.getProperty("release.message") + NL;
 		
-		if (null != issue) {
-			comment += "jira: " + issue.toShortString() + NL;
+		for (Issue issue : issues) {
+			if (null != issue) {
+				comment += "jira: " + issue.toShortString() + NL;
+			}
 		}
 		comment += "### kbot end." + NL;
 		
@@ -22,111 +22,234 @@
 
 package mcp.kiuwan.zendesk;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
-import javax.ws.rs.client.Client;
-import javax.ws.rs.client.ClientBuilder;
-import javax.ws.rs.client.Entity;
-import javax.ws.rs.client.Invocation;
-import javax.ws.rs.client.WebTarget;
-import javax.ws.rs.core.MediaType;
-import javax.ws.rs.core.Response;
-
-import org.glassfish.jersey.client.ClientConfig;
-import org.glassfish.jersey.client.authentication.HttpAuthenticationFeature;
+import mcp.kiuwan.http.HttpReply;
+import mcp.kiuwan.http.HttpTransport;
+import mcp.kiuwan.http.HttpUrl;
+import mcp.kiuwan.http.RestClient;
 import mcp.kiuwan.zendesk.beans.Comment;
 import mcp.kiuwan.zendesk.beans.Field;
 import mcp.kiuwan.zendesk.beans.Note;
 import mcp.kiuwan.zendesk.beans.Ticket;
+import mcp.kiuwan.zendesk.beans.TicketField;
+import mcp.kiuwan.zendesk.beans.TicketFieldPage;
 import mcp.kiuwan.zendesk.beans.TicketPage;
 
-public class ZendeskClient {
-	private final Long JIRA_FIELD_ID = 360001675219L;
-
-	private HttpAuthenticationFeature feature;
-
-	private ClientConfig clientConfig;
-	private Client client;
+public class ZendeskClient extends RestClient<ZendeskException> {
+	private final static int SHOW_MANY_LIMIT = 100;
+	// custom field ids of the kiuwan instance, used when none are configured.
+	private final static Long KIUWAN_JIRA_FIELD_ID = 360001675219L;
+	private final static Long KIUWAN_SUBSTATUS_FIELD_ID = 360001788879L;
+	
+	private Long jiraFieldId = KIUWAN_JIRA_FIELD_ID;
+	private Long substatusFieldId = KIUWAN_SUBSTATUS_FIELD_ID;
 
 	private String domain;
+	private String baseUrl;
+	private long indexHeapBudget = Long.MAX_VALUE;
+	private File indexDir = new File(System.getProperty("java.io.tmpdir"));
 	
 	public ZendeskClient(String domain, String username, String password) {
+		this(domain, HttpTransport.create(null, username+"/token", password));
+	}
+	
+	
+	// the transport authenticates as '<username>/token'.
+	public ZendeskClient(String domain, HttpTransport transport) {
+		super(transport, "zendesk");
 		this.domain = domain;
-		
-		feature = HttpAuthenticationFeature.basicBuilder().credentials(username+"/token", password).build();
-
-		clientConfig = new ClientConfig();
-		clientConfig.register(feature);
-		
-		client = ClientBuilder.newClient(clientConfig);
 	}
 
 	
-	private WebTarget getWebTarget() {
-		return client.target("https://" + domain + ".zendesk.com");
+	private HttpUrl getUrl(String path) {
+		return HttpUrl.of(baseUrl != null ? baseUrl : "https://" + domain + ".zendesk.com", path);
 	}
 	
 	
-	public List<Ticket> getTicketsFromView(String viewId) throws ZendeskException {
-		WebTarget target = getWebTarget().path("/api/v2/views/" + viewId + "/tickets.json");
+	// instead of https://<domain>.zendesk.com.
+	public void setBaseUrl(String baseUrl) {
+		this.baseUrl = (baseUrl != null && !baseUrl.trim().isEmpty() ? baseUrl.trim() : null);
+	}
+	
+	
+	// bytes of the jira key -> ticket index kept on heap, the rest is spilled to files in dir.
+	public void setIndexBudget(long heapBudget, File dir) {
+		this.indexHeapBudget = (heapBudget > 0 ? heapBudget : Long.MAX_VALUE);
+		if (dir != null) {
+			this.indexDir = dir;
+		}
+	}
+	
+	
+	public TicketIndex newTicketIndex() {
+		return new TicketIndex(indexHeapBudget, indexDir);
+	}
+	
+	
+	public void setFieldIds(Long jiraFieldId, Long substatusFieldId) {
+		if (jiraFieldId != null) {
+			this.jiraFieldId = jiraFieldId;
+		}
+		if (substatusFieldId != null) {
+			this.substatusFieldId = substatusFieldId;
+		}
+	}
+	
+	
+	public Long getJiraFieldId() {
+		return jiraFieldId;
+	}
+	
+	
+	public Long getSubstatusFieldId() {
+		return substatusFieldId;
+	}
+	
+	
+	public List<TicketField> getTicketFields() throws ZendeskException {
+		List<TicketField> ticketFields = new ArrayList<>();
+		
+		HttpUrl url = getUrl("/api/v2/ticket_fields.json");
+		while (url != null) {
+			TicketFieldPage page = get(url, TicketFieldPage.class);
 			
-		Invocation.Builder builder = target.request(MediaType.APPLICATION_JSON);
-
-		Response response = builder.get();
-		if (response.getStatus() != 200) {
-			throw new ZendeskException(response);
+			if (page.getTicket_fields() != null) {
+				ticketFields.addAll(page.getTicket_fields());
+			}
+			url = (page.getNext_page() != null ? HttpUrl.of(page.getNext_page()) : null);
+		}
+		
+		return ticketFields;
+	}
+	
+	
+	public List<Ticket> getTicketsFromView(String viewId) throws ZendeskException {
+		List<Ticket> tickets = new ArrayList<>();
+		
+		TicketPage ticketPage = getTicketPage(viewId, null);
+		while (ticketPage != null) {
+			if (ticketPage.getTickets() != null) {
+				tickets.addAll(ticketPage.getTickets());
+			}
+			ticketPage = (ticketPage.getNext_page() != null ? getTicketPage(viewId, ticketPage.getNext_page()) : null);
 		}
 		
-		TicketPage ticketPage = response.readEntity(TicketPage.class);
-		response.close();
+		return tickets;
+	}
+	
+	
+	// first page when nextPage is null, otherwise the 'next_page' url of the previous one.
+	public TicketPage getTicketPage(String viewId, String nextPage) throws ZendeskException {
+		HttpUrl url = (nextPage != null ? HttpUrl.of(nextPage) : getUrl("/api/v2/views/" + viewId + "/tickets.json"));
 		
-		return ticketPage.getTickets();
+		return get(url, TicketPage.class);
 	}
 	
 		
 	public Map<String, Ticket> getTicketsWithIssueFromView(String viewId) throws ZendeskException {
-		Map<String, Ticket> ticketsWithIssue = new LinkedHashMap<>();
+		Map<String, Ticket> ticketsWithIssue = newTicketIndex();
+		
+		// page by page: only the index (within its heap budget) holds the tickets.
+		for (TicketPage page = getTicketPage(viewId, null); page != null; page = (page.getNext_page() != null ? getTicketPage(viewId, page.getNext_page()) : null)) {
+			if (page.getTickets() != null) {
+				page.getTickets().forEach(ticket -> {
+					getJiraKeys(ticket).forEach(key -> {
+						ticketsWithIssue.put(key, ticket);
+					});
+				});
+			}
+		}
+		
+		return ticketsWithIssue;
+	}
+	
+	
+	// all the tickets linked to each key (the webhook releases every one of them).
+	public JiraKeyIndex getJiraKeyIndexFromView(String viewId) throws ZendeskException {
+		JiraKeyIndex jiraKeyIndex = new JiraKeyIndex(newTicketIndex());
+		
+		for (TicketPage page = getTicketPage(viewId, null); page != null; page = (page.getNext_page() != null ? getTicketPage(viewId, page.getNext_page()) : null)) {
+			if (page.getTickets() != null) {
+				page.getTickets().forEach(ticket -> jiraKeyIndex.add(ticket, getJiraKeys(ticket)));
+			}
+		}
+		
+		return jiraKeyIndex;
+	}
+	
+	
+	public List<String> getJiraKeys(Ticket ticket) {
+		List<String> jiraKeys = new ArrayList<>();
 		
-		List<Ticket> tickets = getTicketsFromView(viewId);
-		tickets.forEach(ticket -> {
-			List<Field> fields = ticket.getFields();
+		List<Field> fields = ticket.getFields();
+		if (fields != null) {
 			fields.forEach(field -> {
-				if (JIRA_FIELD_ID.equals(field.getId())) {
+				if (jiraFieldId.equals(field.getId())) {
 					String value = (String) field.getValue();
-					if (null != value) {
-						List<String> jiraKeys = Arrays.asList(value.trim().split("[\\s,]+"));
-						jiraKeys.forEach(key -> {
-							ticketsWithIssue.put(key, ticket);
-						});
+					if (null != value && !value.trim().isEmpty()) {
+						jiraKeys.addAll(Arrays.asList(value.trim().split("[\\s,]+")));
 					}
 				}
 			});
-		});
+		}
 		
-		return ticketsWithIssue;
+		return jiraKeys;
 	}
 
 
+	// 'show_many' in batches of 100 ids: N/100 calls.
+	public List<Ticket> getTickets(List<Long> ids) throws ZendeskException {
+		List<Ticket> tickets = new ArrayList<>();
+		
+		for (int from = 0; from < ids.size(); from += SHOW_MANY_LIMIT) {
+			List<Long> batch = ids.subList(from, Math.min(ids.size(), from + SHOW_MANY_LIMIT));
+			HttpUrl url = getUrl("/api/v2/tickets/show_many.json")
+				.query("ids", batch.stream().map(String::valueOf).collect(Collectors.joining(",")));
+			
+			TicketPage ticketPage = get(url, TicketPage.class);
+			if (ticketPage.getTickets() != null) {
+				tickets.addAll(ticketPage.getTickets());
+			}
+		}
+		
+		return tickets;
+	}
+	
+	
 	public void releaseTicket(Ticket t, String msg) throws ZendeskException {
-		WebTarget target = getWebTarget().path("/api/v2/tickets/" + t.getId() + ".json");
+		HttpUrl url = getUrl("/api/v2/tickets/" + t.getId() + ".json");
 			
 		Note note = new Note();
 		Ticket ticket = new Ticket();	
 		Comment comment = new Comment(msg);
 		
 		ticket.setComment(comment);
-		ticket.releaseTicket();
+		ticket.releaseTicket(substatusFieldId);
 		note.setTicket(ticket);
 		
-		Invocation.Builder builder = target.request();
-		Response response = builder.put(Entity.json(note));
-		if (response.getStatus() != 200) {
-			throw new ZendeskException(response);
+		HttpReply reply = send("PUT", url.toString(), note);
+		if (reply.getStatus() != 200) {
+			throw new ZendeskException(reply);
 		}
-		response.close();
+	}
+	
+	
+	@Override
+	protected ZendeskException newException(HttpReply reply) {
+		return new ZendeskException(reply);
+	}
+	
+	
+	@Override
+	protected ZendeskException newException(IOException cause) {
+		return new ZendeskException(cause);
 	}
 
 }
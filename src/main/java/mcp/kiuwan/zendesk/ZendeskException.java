@@ -22,12 +22,20 @@
 
 package mcp.kiuwan.zendesk;
 
-import javax.ws.rs.core.Response;
+import mcp.kiuwan.http.HttpReply;
 
 public class ZendeskException extends Exception {
 	private static final long serialVersionUID = -7613914949965986982L;
 	
-	public ZendeskException(Response response) {
-		super("HTTP error: " + response.getStatus() + ". " + response.getStatusInfo().getReasonPhrase());
+	public ZendeskException(HttpReply reply) {
+		super("HTTP error: " + reply.getStatus() + ". " + reply.getReason());
+	}
+	
+	public ZendeskException(String message) {
+		super(message);
+	}
+	
+	public ZendeskException(Throwable cause) {
+		super("HTTP error: " + cause.getMessage(), cause);
 	}
 }
@@ -0,0 +1,145 @@
+// MIT License
+//
+// Copyright (c) 2019 Marcos Cacabelos Prol
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+
+package mcp.kiuwan.zendesk;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import mcp.kiuwan.zendesk.beans.TicketField;
+
+// ticket field ids by title, loaded from 'ticket_fields' at most once per run and kept on disk until ttl expires.
+public class ZendeskFieldCache {
+	private final static String FETCHED_AT = "fetched.at";
+	
+	private static Logger logger = LoggerFactory.getLogger(ZendeskFieldCache.class);
+
+	private ZendeskClient zdClient;
+	private File file;
+	private long ttlMillis;
+	
+	private Properties fields;
+	private boolean fetched;
+	
+	public ZendeskFieldCache(ZendeskClient zdClient, File file, long ttlSeconds) {
+		this.zdClient = zdClient;
+		this.file = file;
+		this.ttlMillis = ttlSeconds * 1000L;
+	}
+	
+	
+	// numeric values are taken as ids, anything else is looked up by field title; empty is null. a title missing from
+	// an unexpired cache is not fetched again: the cache holds all the titles of the instance.
+	public Long resolve(String titleOrId) throws ZendeskException {
+		if (titleOrId == null || titleOrId.trim().isEmpty()) {
+			return null;
+		}
+		
+		String value = titleOrId.trim();
+		if (value.matches("[0-9]+")) {
+			return Long.valueOf(value);
+		}
+		
+		if (fields == null) {
+			fields = load();
+		}
+		
+		String key = normalize(value);
+		if (isExpired() && !fetched) {
+			fields = fetch();
+		}
+		
+		String id = fields.getProperty(key);
+		if (id == null) {
+			throw new ZendeskException("Zendesk ticket field '" + value + "' not found" + (fetched ? "." : " in '" + file + "', delete it to fetch the fields again."));
+		}
+		return Long.valueOf(id);
+	}
+	
+	
+	private boolean isExpired() {
+		long fetchedAt = Long.parseLong(fields.getProperty(FETCHED_AT, "0"));
+		return System.currentTimeMillis() - fetchedAt > ttlMillis;
+	}
+	
+	
+	private Properties load() {
+		Properties properties = new Properties();
+		if (file == null || !file.isFile()) {
+			return properties;
+		}
+		
+		try (InputStream input = new FileInputStream(file)) {
+			properties.load(input);
+		} catch (IOException | IllegalArgumentException e) {
+			logger.warn("Cannot read field cache '{}': {}", file, e.getMessage());
+			properties.clear();
+		}
+		
+		return properties;
+	}
+	
+	
+	private Properties fetch() throws ZendeskException {
+		fetched = true;
+		
+		List<TicketField> ticketFields = zdClient.getTicketFields();
+		logger.debug("Zendesk has '{}' ticket fields.", ticketFields.size());
+
+		Properties properties = new Properties();
+		ticketFields.forEach(f -> {
+			if (f.getId() != null) {
+				if (f.getTitle() != null) {
+					properties.setProperty(normalize(f.getTitle()), f.getId().toString());
+				}
+				if (f.getRaw_title() != null) {
+					properties.putIfAbsent(normalize(f.getRaw_title()), f.getId().toString());
+				}
+			}
+		});
+		properties.setProperty(FETCHED_AT, Long.toString(System.currentTimeMillis()));
+		
+		if (file != null) {
+			try (OutputStream output = new FileOutputStream(file)) {
+				properties.store(output, "zendesk ticket fields");
+			} catch (IOException e) {
+				logger.warn("Cannot write field cache '{}': {}", file, e.getMessage());
+			}
+		}
+		
+		return properties;
+	}
+	
+	
+	private String normalize(String title) {
+		return title.trim().toLowerCase();
+	}
+}
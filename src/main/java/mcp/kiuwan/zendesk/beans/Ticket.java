@@ -23,21 +23,23 @@
 package mcp.kiuwan.zendesk.beans;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
+import mcp.kiuwan.http.JsonMapper;
 
 @Getter
 @Setter
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class Ticket {
+	@Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE) static public final String RELEASED = "released";
+	
 	private Long id;
 	private List<Field> fields;
 	private Comment comment;
@@ -48,21 +50,20 @@ public class Ticket {
 	}
 
 	
-	public String toShortString() {
-		final JsonNodeFactory factory = JsonNodeFactory.instance;
-
-		ObjectNode node =  factory.objectNode();
+	// field ids of the zendesk instance, see ZendeskClient.
+	public String toShortString(Long jiraFieldId, Long substatusFieldId) {
+		ObjectNode node =  JsonMapper.objectNode();
 		node.put("id", getId());
-		node.put("substatus", getFieldValue(360001788879L));
-		node.put("jira", getFieldValue(360001675219L));
+		node.put("substatus", getFieldValue(substatusFieldId));
+		node.put("jira", getFieldValue(jiraFieldId));
 		
 		return objectAsString(node);
 	}
 	
 	
-	private String getFieldValue(Long key) {
+	public String getFieldValue(Long key) {
 		String value = "{}";
-		Field field = getFields().stream().filter(f -> f.getId().equals(key)).findFirst().get();
+		Field field = (getFields() == null ? null : getFields().stream().filter(f -> key.equals(f.getId())).findFirst().orElse(null));
 		
 		if (field != null) {
 			if (field.getValue() != null) {
@@ -74,11 +75,25 @@ public class Ticket {
 	}
 	
 	
-	public void releaseTicket() {
-		String[] subStatus = new String[]{"released"};
+	public boolean isReleased(Long substatusFieldId) {
+		Field field = (getFields() == null ? null : getFields().stream().filter(f -> substatusFieldId.equals(f.getId())).findFirst().orElse(null));
+		if (field == null || field.getValue() == null) {
+			return false;
+		}
+		
+		Object value = field.getValue();
+		if (value instanceof Collection) {
+			return ((Collection<?>) value).contains(RELEASED);
+		}
+		return RELEASED.equals(value.toString());
+	}
+	
+	
+	public void releaseTicket(Long substatusFieldId) {
+		String[] subStatus = new String[]{RELEASED};
 		
 		Field field = new Field();
-		field.setId(360001788879L);
+		field.setId(substatusFieldId);
 		field.setValue(subStatus);
 		
 		if (fields == null)  {
@@ -89,15 +104,7 @@ public class Ticket {
 	
 	
 	private String objectAsString(Object object) {
-		ObjectMapper objectMapper = new ObjectMapper();
-		String valueAsString;
-		try {
-			valueAsString = objectMapper.writeValueAsString(object);
-		} catch (JsonProcessingException e) {
-			valueAsString = e.getMessage();
-		}
-		
-		return valueAsString;
+		return JsonMapper.writeValueAsString(object);
 	}
 	
 }
@@ -34,7 +34,7 @@ import lombok.Setter;
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class TicketPage {
 	private List<Ticket> tickets;
-	private Long next_page;
-	private Long previous_page;
+	private String next_page;  // url.
+	private String previous_page;
 	private Long count;
 }
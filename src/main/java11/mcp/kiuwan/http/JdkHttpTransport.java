@@ -0,0 +1,191 @@
+// MIT License
+//
+// Copyright (c) 2019 Marcos Cacabelos Prol
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+
+package mcp.kiuwan.http;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Map;
+
+// java.net.http client: http/2 when an https server supports it, so the concurrent calls of the release threads are
+// multiplexed on one connection per host instead of one connection each. deadline, cache and tracing are applied
+// around each call.
+public class JdkHttpTransport implements HttpTransport {
+	private final static String CORRELATION_HEADER = "X-Correlation-Id";
+	
+	private String authorization;
+	private HttpClient client;
+	private Duration readTimeout;
+	private Deadline deadline = Deadline.none();
+	private HttpCache httpCache;
+	private Tracer tracer = Tracer.disabled();
+	private String host = "http";
+	
+	public JdkHttpTransport(String user, String password) {
+		authorization = "Basic " + Base64.getEncoder().encodeToString((user + ":" + password).getBytes(StandardCharsets.UTF_8));
+		client = newClient(0);
+	}
+	
+	
+	@Override
+	public HttpReply get(String url) throws IOException {
+		return send("GET", url, null);
+	}
+	
+	
+	@Override
+	public HttpReply put(String url, Object body) throws IOException {
+		return send("PUT", url, body);
+	}
+	
+	
+	@Override
+	public HttpReply post(String url, Object body) throws IOException {
+		return send("POST", url, body);
+	}
+	
+	
+	@Override
+	public void setTimeouts(int connectTimeout, int readTimeout) {
+		client = newClient(connectTimeout);
+		this.readTimeout = (readTimeout > 0 ? Duration.ofMillis(readTimeout) : null);
+	}
+	
+	
+	@Override
+	public void setDeadline(Deadline deadline) {
+		this.deadline = deadline;
+	}
+	
+	
+	@Override
+	public void setHttpCache(HttpCache httpCache) {
+		this.httpCache = httpCache;
+	}
+	
+	
+	@Override
+	public void setTracer(Tracer tracer, String host) {
+		this.tracer = tracer;
+		this.host = host;
+	}
+	
+	
+	private HttpClient newClient(int connectTimeout) {
+		HttpClient.Builder builder = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2);
+		if (connectTimeout > 0) {
+			builder.connectTimeout(Duration.ofMillis(connectTimeout));
+		}
+		
+		return builder.build();
+	}
+	
+	
+	private HttpReply send(String method, String url, Object body) throws IOException {
+		boolean cacheable = (httpCache != null && "GET".equals(method));
+		HttpReply reply = exchange(method, url, body, cacheable ? httpCache.getValidators(url) : Collections.emptyMap());
+		if (reply == null) {
+			// 304 of an entry evicted after its validators were sent: asked again without them.
+			reply = exchange(method, url, body, Collections.emptyMap());
+		}
+		
+		return reply;
+	}
+	
+	
+	// null for a 304 to validators of a body no longer cached.
+	private HttpReply exchange(String method, String url, Object body, Map<String, String> validators) throws IOException {
+		long remaining = deadline.remainingMillis();
+		if (remaining <= 0) {
+			return new HttpReply(504, "Gateway Timeout", "Run deadline exceeded.".getBytes(StandardCharsets.UTF_8));
+		}
+		
+		URI uri = URI.create(url);
+		HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+			.header("Authorization", authorization)
+			.header("Accept", "application/json");
+		// http/2 is negotiated on tls; the cleartext upgrade (h2c) breaks the connections of many http/1.1 servers.
+		if ("http".equalsIgnoreCase(uri.getScheme())) {
+			builder.version(HttpClient.Version.HTTP_1_1);
+		}
+		
+		// the timeout of the whole exchange, never beyond the deadline.
+		Duration timeout = readTimeout;
+		if (remaining != Long.MAX_VALUE && (timeout == null || timeout.toMillis() > remaining)) {
+			timeout = Duration.ofMillis(remaining);
+		}
+		if (timeout != null) {
+			builder.timeout(timeout);
+		}
+		
+		validators.forEach(builder::header);
+		
+		if (body != null) {
+			builder.header("Content-Type", "application/json");
+			builder.method(method, HttpRequest.BodyPublishers.ofByteArray(JsonMapper.get().writeValueAsBytes(body)));
+		} else {
+			builder.method(method, HttpRequest.BodyPublishers.noBody());
+		}
+		
+		Tracer.Span span = tracer.detachedSpan(host + " " + method + " " + uri.getPath(), host).arg("url", url);
+		if (tracer.isEnabled()) {
+			builder.header(CORRELATION_HEADER, Long.toString(span.getId()));
+		}
+		
+		HttpResponse<byte[]> response;
+		try {
+			response = client.send(builder.build(), HttpResponse.BodyHandlers.ofByteArray());
+			span.arg("status", response.statusCode());
+		} catch (IOException e) {
+			span.arg("error", e.getMessage());
+			throw e;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(method + " " + url + " interrupted.");
+		} finally {
+			span.close();
+		}
+		
+		int status = response.statusCode();
+		byte[] bytes = response.body();
+		if (!validators.isEmpty() && status == 304) {
+			byte[] cached = httpCache.getRevalidated(url);
+			return (cached != null ? new HttpReply(200, "", cached) : null);
+		} else if (httpCache != null && "GET".equals(method) && status == 200) {
+			String etag = response.headers().firstValue("ETag").orElse(null);
+			String lastModified = response.headers().firstValue("Last-Modified").orElse(null);
+			if (etag != null || lastModified != null) {
+				httpCache.put(url, etag, lastModified, bytes);
+			}
+		}
+		
+		return new HttpReply(status, "", bytes);
+	}
+}
@@ -0,0 +1,188 @@
+// MIT License
+//
+// Copyright (c) 2019 Marcos Cacabelos Prol
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+
+
+package mcp.kiuwan.zendesk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import mcp.kiuwan.jira.beans.Fields;
+import mcp.kiuwan.jira.beans.Issue;
+import mcp.kiuwan.jira.beans.Status;
+import mcp.kiuwan.zendesk.beans.Field;
+import mcp.kiuwan.zendesk.beans.Ticket;
+
+public class ReleasePlanTest {
+	private final static Long SUBSTATUS_FIELD_ID = 100L;
+	private final static String MESSAGE = "Released in 2.8";
+	
+	// ticket 1: K-1, K-2 (resolved); ticket 2 (released): K-3 (closed, notes written); no ticket: K-4 (resolved, notes
+	// written), K-5 (not found) and P-1 (resolved, another project).
+	private final static List<String> KEYS = Arrays.asList("K-1", "K-2", "K-3", "K-4", "K-5", "P-1", "K-1");
+	
+	@Test
+	public void groupsKeysByTicket() {
+		ReleasePlan plan = plan(false);
+		
+		assertEquals(Arrays.asList("ticket:1", "ticket:2", "key:K-4", "key:K-5", "key:P-1"), plan.getUnits().stream().map(ReleasePlan.Unit::getId).collect(Collectors.toList()));
+		assertEquals(Arrays.asList("K-1", "K-2"), plan.getUnits().get(0).getKeys());
+		assertEquals(Arrays.asList("K-1", "K-2"), plan.getUnits().get(0).getIssues().stream().map(Issue::getKey).collect(Collectors.toList()));
+	}
+	
+	
+	@Test
+	public void skipsStepsAlreadyDone() {
+		ReleasePlan plan = plan(false);
+		
+		assertEquals(3, plan.getIssueUpdates());
+		assertEquals(4, plan.getTransitions());
+		assertEquals(1, plan.getMissingIssues());
+		// K-3: release notes and transition; K-4: release notes.
+		assertEquals(3, plan.getDoneSteps());
+		assertTrue(step(plan, "K-3").isDone());
+		assertFalse(step(plan, "K-4").isDone());
+		assertFalse(step(plan, "K-4").isUpdate());
+		assertTrue(step(plan, "K-4").isTransition());
+	}
+	
+	
+	@Test
+	public void updatesReleasedTicketsUnlessAsked() {
+		ReleasePlan plan = plan(false);
+		assertEquals(2, plan.getTicketUpdates());
+		assertTrue(plan.getUnits().get(1).isTicketUpdate());
+		
+		plan = plan(true);
+		assertEquals(1, plan.getTicketUpdates());
+		assertFalse(plan.getUnits().get(1).isTicketUpdate());
+		assertEquals(4, plan.getDoneSteps());
+	}
+	
+	
+	@Test
+	public void looksUpTransitionsOncePerWorkflowStep() {
+		ReleasePlan plan = plan(false);
+		
+		assertEquals(Arrays.asList("K-1", "P-1"), plan.getTransitionLookups().stream().map(Issue::getKey).collect(Collectors.toList()));
+	}
+	
+	
+	@Test
+	public void countsCalls() {
+		ReleasePlan plan = plan(false);
+		
+		assertEquals(2, plan.getZendeskCalls());
+		// 3 edits, 4 transitions, 2 lookups.
+		assertEquals(9, plan.getJiraCalls());
+		assertEquals(3, plan.getMergedCalls());
+	}
+	
+	
+	@Test
+	public void updatesEveryIssueWithoutMessage() {
+		ReleasePlan plan = new ReleasePlan(KEYS, tickets(), issues(), " ", "Close", SUBSTATUS_FIELD_ID, false);
+		
+		assertEquals(5, plan.getIssueUpdates());
+		assertFalse(step(plan, "K-3").isDone());
+	}
+	
+	
+	@Test
+	public void estimatesWallTime() {
+		ReleasePlan plan = plan(false);
+		
+		// lookups 200 + units (410, 10, 100, 0, 200), one after the other.
+		assertEquals(920, plan.estimateMillis(1, 10, 10, 100, 10));
+		// the longest unit (ticket 1) bounds 4 threads.
+		assertEquals(410, plan.estimateMillis(4, 10, 10, 100, 10));
+		// 9 jira calls one at a time.
+		assertEquals(900, plan.estimateMillis(4, 1, 10, 100, 10));
+	}
+	
+	
+	private static ReleasePlan plan(boolean skipReleasedTickets) {
+		return new ReleasePlan(KEYS, tickets(), issues(), MESSAGE, "Close", SUBSTATUS_FIELD_ID, skipReleasedTickets);
+	}
+	
+	
+	private static ReleasePlan.IssueStep step(ReleasePlan plan, String key) {
+		return plan.getUnits().stream().flatMap(unit -> unit.getSteps().stream()).filter(step -> step.getKey().equals(key)).findFirst().orElse(null);
+	}
+	
+	
+	private static Map<String, Ticket> tickets() {
+		Ticket first = ticket(1L, null);
+		Ticket released = ticket(2L, Ticket.RELEASED);
+		
+		Map<String, Ticket> tickets = new HashMap<>();
+		tickets.put("K-1", first);
+		tickets.put("K-2", first);
+		tickets.put("K-3", released);
+		return tickets;
+	}
+	
+	
+	private static Map<String, Issue> issues() {
+		Map<String, Issue> issues = new HashMap<>();
+		issues.put("K-1", issue("K-1", Status.RESOLVED, null));
+		issues.put("K-2", issue("K-2", Status.RESOLVED, "old notes"));
+		issues.put("K-3", issue("K-3", Status.CLOSED, "old notes\n" + MESSAGE));
+		issues.put("K-4", issue("K-4", Status.RESOLVED, MESSAGE));
+		issues.put("P-1", issue("P-1", Status.RESOLVED, null));
+		return issues;
+	}
+	
+	
+	private static Ticket ticket(Long id, String substatus) {
+		Field field = new Field();
+		field.setId(SUBSTATUS_FIELD_ID);
+		field.setValue(substatus);
+		
+		Ticket ticket = new Ticket();
+		ticket.setId(id);
+		ticket.setFields(new ArrayList<>(Arrays.asList(field)));
+		return ticket;
+	}
+	
+	
+	private static Issue issue(String key, long statusId, String releaseNotes) {
+		Fields fields = new Fields();
+		fields.setStatus(Status.of(statusId, statusId == Status.CLOSED ? "Closed" : "Resolved"));
+		fields.setCustomfield_10321(releaseNotes);
+		
+		Issue issue = new Issue();
+		issue.setKey(key);
+		issue.setFields(fields);
+		return issue;
+	}
+}
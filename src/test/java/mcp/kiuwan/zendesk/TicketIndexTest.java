@@ -0,0 +1,172 @@
+// MIT License
+//
+// Copyright (c) 2019 Marcos Cacabelos Prol
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in all
+// copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+// SOFTWARE.
+
+
+package mcp.kiuwan.zendesk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import mcp.kiuwan.zendesk.beans.Ticket;
+
+public class TicketIndexTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void keepsEntriesOnHeapWithinBudget() throws Exception {
+		try (TicketIndex index = new TicketIndex(Long.MAX_VALUE, folder.getRoot())) {
+			index.put("K-1", ticket(1));
+			index.put("K-2", ticket(2));
+			
+			assertEquals(0, index.getSpilled());
+			assertEquals(2, index.size());
+			assertEquals(Long.valueOf(2), index.get("K-2").getId());
+		}
+		assertEquals(0, folder.getRoot().list().length);
+	}
+	
+	
+	@Test
+	public void spillsOverBudget() throws Exception {
+		try (TicketIndex index = new TicketIndex(500, folder.getRoot())) {
+			for (int i = 0; i < 100; i++) {
+				index.put("K-" + i, ticket(i));
+			}
+			
+			assertTrue(index.getSpilled() > 0 && index.getSpilled() < 100);
+			assertEquals(100, index.size());
+			for (int i = 0; i < 100; i++) {
+				assertEquals(Long.valueOf(i), index.get("K-" + i).getId());
+			}
+			assertNull(index.get("K-100"));
+			assertFalse(index.containsKey("K-100"));
+		}
+	}
+	
+	
+	@Test
+	public void replacementKeepsPlaceAndReturnsPrevious() throws Exception {
+		try (TicketIndex index = new TicketIndex(0, folder.getRoot())) {
+			index.put("K-1", ticket(1));
+			index.put("K-2", ticket(2));
+			index.put("K-3", ticket(3));
+			
+			assertEquals(Long.valueOf(2), index.put("K-2", ticket(20)).getId());
+			assertEquals(Long.valueOf(20), index.put("K-2", ticket(21)).getId());
+			
+			assertEquals(3, index.size());
+			assertEquals(3, index.getSpilled());
+			assertEquals(Long.valueOf(21), index.get("K-2").getId());
+			assertEquals(keys("K-1", "K-2", "K-3"), keys(index));
+			assertEquals(Long.valueOf(21), entry(index, "K-2").getValue().getId());
+		}
+	}
+	
+	
+	@Test
+	public void rehashKeepsEveryKey() throws Exception {
+		int count = 40000;
+		try (TicketIndex index = new TicketIndex(0, folder.getRoot())) {
+			for (int i = 0; i < count; i++) {
+				index.put("K-" + i, ticket(i));
+			}
+			// a replacement after the table has grown.
+			index.put("K-7", ticket(-7));
+			
+			assertEquals(count, index.size());
+			for (int i = 0; i < count; i++) {
+				assertEquals(Long.valueOf(i == 7 ? -7 : i), index.get("K-" + i).getId());
+			}
+		}
+	}
+	
+	
+	@Test
+	public void iteratesHeapThenSpilledInInsertionOrder() throws Exception {
+		List<String> expected = new ArrayList<>();
+		try (TicketIndex index = new TicketIndex(1000, folder.getRoot())) {
+			for (int i = 0; i < 50; i++) {
+				index.put("K-" + (i * 7919 % 50), ticket(i));
+				expected.add("K-" + (i * 7919 % 50));
+			}
+			
+			assertTrue(index.getSpilled() > 0);
+			assertEquals(expected, keys(index));
+		}
+	}
+	
+	
+	@Test
+	public void closeDeletesSpillFiles() throws Exception {
+		TicketIndex index = new TicketIndex(0, folder.getRoot());
+		index.put("K-1", ticket(1));
+		assertEquals(1, folder.getRoot().list().length);
+		
+		index.close();
+		assertEquals(0, folder.getRoot().list().length);
+	}
+	
+	
+	private static Ticket ticket(long id) {
+		Ticket ticket = new Ticket();
+		ticket.setId(id);
+		return ticket;
+	}
+	
+	
+	private static List<String> keys(String... keys) {
+		List<String> list = new ArrayList<>();
+		for (String key : keys) {
+			list.add(key);
+		}
+		return list;
+	}
+	
+	
+	private static List<String> keys(TicketIndex index) {
+		List<String> keys = new ArrayList<>();
+		index.entrySet().forEach(entry -> keys.add(entry.getKey()));
+		return keys;
+	}
+	
+	
+	private static Map.Entry<String, Ticket> entry(TicketIndex index, String key) {
+		for (Map.Entry<String, Ticket> entry : index.entrySet()) {
+			if (entry.getKey().equals(key)) {
+				return entry;
+			}
+		}
+		return null;
+	}
+}